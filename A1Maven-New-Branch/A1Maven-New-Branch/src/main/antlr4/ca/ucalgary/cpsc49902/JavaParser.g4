@@ -367,21 +367,33 @@ expressionStatement
 statementExpression
    : preIncrementExpression
    | preDecrementExpression
-   | primary assignmentOperator assignmentExpression
+   | primary assignmentOperator expression
    | primary postfixOp?
    ;
 
 /* Expression Hierarchy
 This part of the parser ensures that the math and logic happen in the correct order. for example * before +
+The binary operators are alternatives of one left-recursive rule, highest precedence first, instead of a rule
+per level, so an operand is only an expression or two deep in the tree rather than fifteen. Assignment and
+?: group to the right, the rest to the left.
 */
 
 expression
-   : assignmentExpression
-   ;
-
-
-assignmentExpression
-   : conditionalExpression (assignmentOperator assignmentExpression)?
+   : prefixExpression
+   | primary postfixOp?
+   | expression (ASTERISK | SLASH | PERCENT) expression
+   | expression (PLUS | MINUS) expression
+   | expression shiftOperator expression
+   | expression relationalOperator expression
+   | expression INSTANCEOF type
+   | expression (DOUBLE_EQUALS | EXCLAMATION_EQUALS) expression
+   | expression AMPERSAND expression
+   | expression CARET expression
+   | expression PIPE expression
+   | expression DOUBLE_AMPERSAND expression
+   | expression DOUBLE_PIPE expression
+   | <assoc=right> expression QUESTION expression COLON expression
+   | <assoc=right> expression assignmentOperator expression
    ;
 
 
@@ -401,46 +413,6 @@ assignmentOperator
    ;
 
 
-conditionalExpression
-   : conditionalOrExpression (QUESTION expression COLON conditionalExpression)?
-   ;
-
-
-conditionalOrExpression
-   : conditionalAndExpression (DOUBLE_PIPE conditionalAndExpression)*
-   ;
-
-
-conditionalAndExpression
-   : inclusiveOrExpression (DOUBLE_AMPERSAND inclusiveOrExpression)*
-   ;
-
-
-inclusiveOrExpression
-   : exclusiveOrExpression (PIPE exclusiveOrExpression)*
-   ;
-
-
-exclusiveOrExpression
-   : andExpression (CARET andExpression)*
-   ;
-
-
-andExpression
-   : equalityExpression (AMPERSAND equalityExpression)*
-   ;
-
-
-equalityExpression
-   : relationalExpression ((DOUBLE_EQUALS | EXCLAMATION_EQUALS) relationalExpression)*
-   ;
-
-
-relationalExpression
-   : shiftExpression ((relationalOperator shiftExpression) | INSTANCEOF type)*
-   ;
-
-
 relationalOperator
    : LESS_THAN_OR_EQUALS
    | GREATER_THAN_OR_EQUALS
@@ -449,37 +421,31 @@ relationalOperator
    ;
 
 
-shiftExpression
-   : additiveExpression (shiftOperator additiveExpression)*
-   ;
-
-
 shiftOperator
    : DOUBLE_LESS_THAN
    | DOUBLE_GREATER_THAN
    | TRIPLE_GREATER_THAN
    ;
 
-
-additiveExpression
-   : multiplicativeExpression ((PLUS | MINUS) multiplicativeExpression)*
-   ;
-
-
-multiplicativeExpression
-   : unaryExpression ((ASTERISK | SLASH | PERCENT) unaryExpression)*
-   ;
-
 /* Unary and Postfix Operations
 These rules handle operations on a single operand like incremenet, decrement, and logical negations.
-Aswell as cast to manage operations for type conversion.
+Aswell as cast to manage operations for type conversion. prefixExpression is every unary form except a
+plain primary, which expression and the unary rules match directly.
 */
-unaryExpression
+prefixExpression
    : PLUS unaryExpression
    | MINUS unaryExpression
    | preIncrementExpression
    | preDecrementExpression
-   | unaryExpressionNotPlusMinus
+   | TILDE unaryExpression
+   | EXCLAMATION unaryExpression
+   | castExpression
+   ;
+
+
+unaryExpression
+   : prefixExpression
+   | primary postfixOp?
    ;
 
 
@@ -493,16 +459,12 @@ preDecrementExpression
    ;
 
 
+// a cast to a class type can't be followed by + or -, "(a) - b" is a subtraction
 unaryExpressionNotPlusMinus
    : TILDE unaryExpression
    | EXCLAMATION unaryExpression
    | castExpression
-   | postfixExpression
-   ;
-
-
-postfixExpression
-   : primary postfixOp?
+   | primary postfixOp?
    ;
 
 
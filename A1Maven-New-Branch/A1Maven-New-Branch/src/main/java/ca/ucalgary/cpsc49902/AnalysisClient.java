@@ -0,0 +1,158 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * the client side of AnalysisDaemon's protocol (--connect).
+ *
+ * results come back as the same FileResults ParallelAnalyzer produces locally, so
+ * AnalysisTool.main reports them the same way. the client never touches the parser,
+ * so it only pays for starting a small JVM; anything that can write lines to a Unix
+ * socket (e.g. socat or nc -U) works as a client too.
+ */
+public class AnalysisClient {
+
+    // a failure as the daemon described it; toString() is what the daemon's exception printed
+    private static class RemoteFailure extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RemoteFailure(String message) {
+            super(message);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    private final Path socket;
+
+    public AnalysisClient(Path socket) {
+        this.socket = socket;
+    }
+
+    /*
+     * sends one request and passes each file's result to sink as it arrives, in input
+     * order. relative inputs are made absolute first, since the daemon resolves paths
+     * against its own working directory.
+     */
+    public void analyze(List<String> inputs, List<String> includes, List<String> excludes,
+                        Consumer<ParallelAnalyzer.FileResult> sink) throws IOException {
+
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                     Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+
+            for (String glob : includes) out.write("include " + glob + "\n");
+            for (String glob : excludes) out.write("exclude " + glob + "\n");
+            for (String input : inputs) out.write("path " + absolute(input) + "\n");
+            out.write("analyze\n");
+            out.flush();
+
+            JsonlRecordReader records = new JsonlRecordReader(in);
+            FileResponse current = null;
+
+            for (String line = in.readLine(); ; line = in.readLine()) {
+                if (line == null) {
+                    throw new IOException("daemon closed the connection before it was done");
+                }
+
+                int space = line.indexOf(' ');
+                String kind = line.startsWith("{") ? "{" : space < 0 ? line : line.substring(0, space);
+                String rest = space < 0 ? "" : line.substring(space + 1);
+
+                if (current == null && (kind.equals("{") || kind.equals("error")
+                        || kind.equals("failed") || kind.equals("timeout"))) {
+                    throw new IOException("unexpected reply from daemon: " + line);
+                }
+
+                switch (kind) {
+                    case "{" -> current.records.add(records.parse(line));
+                    case "file" -> {
+                        if (current != null) sink.accept(current.toResult());
+                        int split = rest.indexOf(' ');
+                        current = new FileResponse(rest.substring(split + 1),
+                                Long.parseLong(rest.substring(0, split)));
+                    }
+                    case "error" -> {
+                        String[] parts = rest.split(" ", 3);
+                        current.errors.add(new AnalysisTool.SyntaxError(
+                                Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]));
+                    }
+                    case "failed" -> current.failure = new RemoteFailure(rest);
+                    case "timeout" -> current.timedOut = rest;
+                    case "done" -> {
+                        if (current != null) sink.accept(current.toResult());
+                        return;
+                    }
+                    case "fatal" -> throw new IOException("daemon refused the request: " + rest);
+                    default -> throw new IOException("unexpected reply from daemon: " + line);
+                }
+            }
+        }
+    }
+
+    // asks the daemon to shut down once its running requests are done
+    public void stop() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                     Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+
+            out.write("stop\n");
+            out.flush();
+            if (!"stopped".equals(in.readLine())) {
+                throw new IOException("daemon didn't acknowledge stop");
+            }
+        }
+    }
+
+    private static String absolute(String input) {
+        String cwd = System.getProperty("user.dir");
+        try {
+            return Path.of(cwd).resolve(input).toString();
+        } catch (InvalidPathException e) {
+            // a glob with characters a Path can't hold on this platform
+            return input.startsWith(File.separator) ? input : cwd + File.separator + input;
+        }
+    }
+
+    private static class FileResponse {
+        final String path;
+        final long nanos;
+        final List<AnalysisTool.InvocationRecord> records = new ArrayList<>();
+        final List<AnalysisTool.SyntaxError> errors = new ArrayList<>();
+        IOException failure;
+        String timedOut;
+
+        FileResponse(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+
+        ParallelAnalyzer.FileResult toResult() {
+            return failure != null
+                    ? new ParallelAnalyzer.FileResult(path, null, failure, nanos)
+                    : new ParallelAnalyzer.FileResult(path,
+                            new AnalysisTool.AnalysisResult(records, errors, timedOut), null, nanos);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ca.ucalgary.cpsc49902;
+
+/*
+ * per-file analysis settings passed to AnalysisTool.analyzeFile().
+ * setters return this so a config can be built in one expression, e.g.
+ *   new AnalysisConfig().setParseMode(ParseMode.LL).setStreaming(true)
+ * a config is only read once analysis starts, so one instance can be shared by all workers.
+ */
+public class AnalysisConfig {
+
+    public static final int DEFAULT_MAX_ERRORS = 100;
+
+    private AnalysisTool.ParseMode parseMode = AnalysisTool.ParseMode.TWO_STAGE;
+    private boolean streaming;
+    private boolean memoryMapped = true;
+    private ParserBackend backend = ParserBackend.ANTLR;
+    private GrammarProfile grammarProfile;
+    private InvocationFilter filter;
+    private long timeLimit;
+    private long tokenLimit;
+    private int maxErrors = DEFAULT_MAX_ERRORS;
+    private int splitTokens;
+    private boolean reuseParsers = true;
+    private AnalysisStats stats;
+
+    public AnalysisTool.ParseMode getParseMode() { return parseMode; }
+    public boolean isStreaming()                 { return streaming; }
+    public boolean isMemoryMapped()              { return memoryMapped; }
+    public ParserBackend getBackend()            { return backend; }
+    public GrammarProfile getGrammarProfile()    { return grammarProfile; }  // null unless profiling
+    public InvocationFilter getFilter()          { return filter; }          // null reports everything
+    public long getTimeLimit()                   { return timeLimit; }       // ms, 0 for none
+    public long getTokenLimit()                  { return tokenLimit; }      // 0 for none
+    public int getMaxErrors()                    { return maxErrors; }
+    public int getSplitTokens()                  { return splitTokens; }     // 0 parses every file whole
+    public boolean isReuseParsers()              { return reuseParsers; }
+    public AnalysisStats getStats()              { return stats; }           // null unless --stats
+
+    public AnalysisConfig setParseMode(AnalysisTool.ParseMode parseMode) {
+        this.parseMode = parseMode;
+        return this;
+    }
+
+    // emit invocations while parsing instead of building and walking the whole parse tree
+    public AnalysisConfig setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    // let SourceLoader memory-map large files instead of always using CharStreams.fromPath()
+    public AnalysisConfig setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    // which parser analyzeSource() hands the file to; parseMode and streaming only apply to ANTLR
+    public AnalysisConfig setBackend(ParserBackend backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    // profile JavaParser's decisions into grammarProfile (null to stop); slows parsing down
+    public AnalysisConfig setGrammarProfile(GrammarProfile grammarProfile) {
+        this.grammarProfile = grammarProfile;
+        return this;
+    }
+
+    // only report invocations the filter matches, and skip files that can't have any (null for all)
+    public AnalysisConfig setFilter(InvocationFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    // give up on a file (AnalysisResult.isTimedOut()) after this many ms of lexing and parsing; 0 for no limit
+    public AnalysisConfig setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+        return this;
+    }
+
+    // give up on a file after the parser has read this many tokens, lookahead included (BudgetedTokenStream)
+    public AnalysisConfig setTokenLimit(long tokenLimit) {
+        this.tokenLimit = tokenLimit;
+        return this;
+    }
+
+    // stop parsing a file at this many syntax errors; one more error then says the rest wasn't checked
+    public AnalysisConfig setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+        return this;
+    }
+
+    // parse files of at least this many tokens a run of members at a time on several threads
+    // (MemberSplitter, antlr only); the results are the same as parsing them whole. 0 to turn off
+    public AnalysisConfig setSplitTokens(int splitTokens) {
+        this.splitTokens = splitTokens;
+        return this;
+    }
+
+    // reset and reuse each thread's lexer, parser and listeners (AnalysisContext) instead of
+    // building new ones for every file; the results are the same either way
+    public AnalysisConfig setReuseParsers(boolean reuseParsers) {
+        this.reuseParsers = reuseParsers;
+        return this;
+    }
+
+    // time each file's phases into stats (null to stop); lexes each file before parsing it
+    public AnalysisConfig setStats(AnalysisStats stats) {
+        this.stats = stats;
+        return this;
+    }
+}
@@ -0,0 +1,129 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/*
+ * the lexer, token stream, parser and listeners AnalysisTool.analyzeWithAntlr() uses
+ * for one file. each platform thread keeps one and resets it for every file instead
+ * of building new ones, which on a corpus of small files is most of the garbage left
+ * over besides the tree and the records.
+ *
+ * acquire() hands out the thread's context, or a new one that is thrown away after
+ * the file when reusing isn't possible: the config turns it off or profiles the
+ * grammar (a profiled parser keeps its own simulator), the thread is virtual (it only
+ * ever runs one file), or the thread's context is already in use further up the stack.
+ *
+ * what a file leaves behind has to be gone before the next one starts. the records
+ * and error lists belong to the AnalysisResult, so the listeners start new ones on
+ * reset rather than clearing them, and release() drops the file's characters, tokens
+ * and tree so an idle thread doesn't keep its last file alive.
+ */
+final class AnalysisContext {
+
+    // a token stream whose buffer grew past this many tokens isn't kept for the next file
+    private static final int MAX_KEPT_TOKENS = 1 << 16;
+
+    private static final ThreadLocal<AnalysisContext> CURRENT = ThreadLocal.withInitial(AnalysisContext::new);
+
+    // the stock simulator holds on to the last prediction's tokens and rule context (and
+    // through it the whole tree); this one lets go of them when the parser is reset
+    private static class ParserSimulator extends ParserATNSimulator {
+        ParserSimulator(JavaParser parser) {
+            super(parser, JavaParser._ATN, JavaParser._decisionToDFA, JavaParser._sharedContextCache);
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            _input = null;
+            _outerContext = null;
+        }
+    }
+
+    private final JavaLexer lexer = AnalysisTool.newLexer(null);
+    private CommonTokenStream plainTokens = new CommonTokenStream(lexer);
+    private final JavaParser parser = new JavaParser(null);
+    private final DefaultErrorStrategy errorStrategy = new DefaultErrorStrategy();
+    private final AnalysisTool.InvocationListener listener = new AnalysisTool.InvocationListener(null);
+    private final StreamingInvocationListener streamingListener = new StreamingInvocationListener(null);
+    private final CompositeAnalysis analyses = new CompositeAnalysis().add(listener, AnalysisTool.InvocationListener.RULES);
+
+    private CommonTokenStream tokens;
+    private boolean inUse;
+
+    private AnalysisContext() {
+        parser.setInterpreter(new ParserSimulator(parser));
+        parser.removeErrorListeners();
+    }
+
+    static AnalysisContext acquire(AnalysisConfig config) {
+        if (config.isReuseParsers() && config.getGrammarProfile() == null && !Thread.currentThread().isVirtual()) {
+            AnalysisContext context = CURRENT.get();
+            if (!context.inUse) {
+                context.inUse = true;
+                return context;
+            }
+        }
+        AnalysisContext context = new AnalysisContext();
+        context.inUse = true;
+        return context;
+    }
+
+    // the file's tokens, from a stream with the config's budget if it has one
+    CommonTokenStream tokens(CharStream input, AnalysisConfig config) {
+        lexer.setInputStream(input);
+        if (config.getTokenLimit() > 0 || config.getTimeLimit() > 0) {
+            // a budget starts its clock when it is made, so this one isn't kept
+            tokens = AnalysisTool.newTokenStream(lexer, config);
+        } else {
+            plainTokens.setTokenSource(lexer);
+            tokens = plainTokens;
+        }
+        return tokens;
+    }
+
+    // the parser on tokens(), with no listeners, LL prediction and default error recovery
+    JavaParser parser() {
+        parser.setErrorHandler(errorStrategy);
+        parser.setTokenStream(tokens);  // resets the parser and the error strategy
+        parser.setBuildParseTree(true);
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return parser;
+    }
+
+    AnalysisTool.InvocationListener listener(String fileName, InvocationFilter filter) {
+        listener.reset(fileName, filter);
+        return listener;
+    }
+
+    // walks tree with listener(), skipping the subtrees no invocation can be in
+    void walk(ParseTree tree) {
+        analyses.walk(tree);
+    }
+
+    StreamingInvocationListener streamingListener(String fileName, InvocationFilter filter) {
+        streamingListener.reset(fileName, filter);
+        return streamingListener;
+    }
+
+    void release() {
+        parser.setTokenStream(null);
+        parser.removeErrorListeners();
+        parser.removeParseListeners();
+        if (plainTokens.getTokens().size() > MAX_KEPT_TOKENS) {
+            plainTokens = new CommonTokenStream(lexer);
+        } else {
+            plainTokens.setTokenSource(lexer);  // empties the buffer
+        }
+        tokens = null;
+        lexer.setInputStream(null);
+        listener.reset(null, null);
+        streamingListener.reset(null, null);
+        inUse = false;
+    }
+}
@@ -0,0 +1,231 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * keeps one JVM around to analyze files for many short-lived clients (--daemon).
+ *
+ * a new process pays for JVM startup, loading the generated parser and lexer, and
+ * JavaParser's DFA, which antlr rebuilds from the ATN in every process. the DFA
+ * cache is static, so in a daemon it only gets warmer, and the worker threads and
+ * JIT-compiled code are shared by every request.
+ *
+ * the daemon listens on a Unix-domain socket and speaks UTF-8 lines. a request is
+ *   include GLOB | exclude GLOB     optional, any number
+ *   path INPUT                      file, directory or glob (see SourceDiscovery), any number
+ *   analyze                         runs the request
+ * or the single line "stop". paths are resolved against the daemon's working
+ * directory, so clients should send absolute ones. for each file the response has
+ *   file NANOS PATH                 analysis time and the path as discovered
+ *   {...}                           one JSONL record per invocation (JsonlRecordWriter)
+ *   error LINE COLUMN MESSAGE       one per syntax error
+ *   failed MESSAGE                  the file couldn't be read
+ *   timeout MESSAGE                 the file ran over its time or token limit
+ * in input order, then "done". a request that can't be run gets "fatal MESSAGE".
+ * each connection carries one request.
+ *
+ * a client can read any file the daemon can through its records, and stop it, so
+ * the socket is only open to its owner: it is bound in a directory nobody else can
+ * enter, made 0600 and only then moved to SOCKET. whatever is at SOCKET already is
+ * only replaced if it is a socket nothing listens on.
+ */
+public class AnalysisDaemon implements AutoCloseable {
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR = PosixFilePermissions.fromString("rwx------");
+
+    // file type bits of unix:mode
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+
+    private final Path socket;
+    private final ParallelAnalyzer analyzer;
+    private final ServerSocketChannel server;
+
+    public AnalysisDaemon(Path socket, ParallelAnalyzer analyzer) throws IOException {
+        if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            if (!isSocket(socket)) {
+                throw new IOException(socket + " already exists and isn't a socket");
+            }
+            if (isListening(socket)) {
+                throw new IOException("a daemon is already listening on " + socket);
+            }
+            // left behind by a daemon that didn't shut down cleanly
+            Files.delete(socket);
+        }
+
+        this.socket = socket;
+        this.analyzer = analyzer;
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bindPrivately(socket);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    // no other user can connect between bind() and the chmod, since they can't enter dir
+    private void bindPrivately(Path socket) throws IOException {
+        Path parent = socket.toAbsolutePath().getParent();
+        Path dir = Files.createTempDirectory(parent, ".daemon", PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIR));
+        try {
+            Path bound = dir.resolve("s");
+            server.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, OWNER_ONLY);
+            Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(dir.resolve("s"));
+            Files.delete(dir);
+        }
+    }
+
+    private static boolean isSocket(Path path) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & S_IFMT) == S_IFSOCK;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // no unix view: not a file, directory or link is as close as it gets
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    private static boolean isListening(Path socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // accepts connections until a client sends "stop"; each one is served on its own virtual thread
+    public void serve() throws IOException {
+        try (ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    return;  // stopped
+                }
+                connections.submit(() -> handle(client));
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                     Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+
+            List<String> inputs = new ArrayList<>();
+            List<String> includes = new ArrayList<>();
+            List<String> excludes = new ArrayList<>();
+
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                int space = line.indexOf(' ');
+                String command = space < 0 ? line : line.substring(0, space);
+                String argument = space < 0 ? "" : line.substring(space + 1);
+
+                switch (command) {
+                    case "path" -> inputs.add(argument);
+                    case "include" -> includes.add(argument);
+                    case "exclude" -> excludes.add(argument);
+                    case "analyze" -> {
+                        analyze(inputs, includes, excludes, out);
+                        return;
+                    }
+                    case "stop" -> {
+                        out.write("stopped\n");
+                        out.flush();
+                        close();
+                        return;
+                    }
+                    default -> {
+                        out.write("fatal unknown command: " + oneLine(line) + "\n");
+                        return;
+                    }
+                }
+            }
+
+        } catch (IOException | UncheckedIOException e) {
+            // the client went away; nothing to report it to
+        }
+    }
+
+    private void analyze(List<String> inputs, List<String> includes, List<String> excludes,
+                         BufferedWriter out) throws IOException {
+        SourceDiscovery sources;
+        try {
+            sources = new SourceDiscovery(inputs, includes, excludes);
+        } catch (IllegalArgumentException e) {
+            out.write("fatal " + oneLine(e.getMessage()) + "\n");
+            return;
+        }
+
+        JsonlRecordWriter records = new JsonlRecordWriter(out);
+        try (sources) {
+            analyzer.analyzeAll(sources, file -> {
+                try {
+                    out.write("file " + file.getNanos() + " " + file.getPath() + "\n");
+                    if (file.isFailed()) {
+                        out.write("failed " + oneLine(file.getFailure().toString()) + "\n");
+                        return;
+                    }
+                    if (file.getResult().isTimedOut()) {
+                        out.write("timeout " + oneLine(file.getResult().getTimedOut()) + "\n");
+                        return;
+                    }
+                    for (AnalysisTool.SyntaxError e : file.getResult().getErrors()) {
+                        out.write("error " + e.getLine() + " " + e.getColumn() + " "
+                                + oneLine(e.getMessage()) + "\n");
+                    }
+                    records.addAll(file.getResult().getRecords());
+                    // let the client print each file as soon as it is done
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        out.write("done\n");
+    }
+
+    private static String oneLine(String s) {
+        return s.replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    // stops accepting connections; requests already running are finished by serve()
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(socket);
+    }
+}
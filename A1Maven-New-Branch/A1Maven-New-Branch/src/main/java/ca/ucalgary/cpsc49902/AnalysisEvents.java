@@ -0,0 +1,73 @@
+package ca.ucalgary.cpsc49902;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+ * JDK Flight Recorder events for each analyzed file and each phase of it (FileMetrics).
+ * they are on in any recording, e.g.
+ *   java -XX:StartFlightRecording:filename=scan.jfr ... ca.ucalgary.cpsc49902.AnalysisTool src
+ *   jfr print --events ca.ucalgary.cpsc49902.AnalysisPhase scan.jfr
+ * and cost a check per file when nothing is recording.
+ */
+final class AnalysisEvents {
+
+    private AnalysisEvents() {
+    }
+
+    @Name("ca.ucalgary.cpsc49902.FileAnalysis")
+    @Label("File Analysis")
+    @Category("Invocation Analysis")
+    @Description("One file read, lexed, parsed and walked, or answered from the result cache")
+    @StackTrace(false)
+    static class FileAnalysis extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Invocations")
+        int invocations;
+
+        @Label("Syntax Errors")
+        int errors;
+
+        @Label("Timed Out")
+        boolean timedOut;
+
+        @Label("From Cache")
+        boolean cached;
+    }
+
+    @Name("ca.ucalgary.cpsc49902.AnalysisPhase")
+    @Label("Analysis Phase")
+    @Category("Invocation Analysis")
+    @Description("Reading, lexing, parsing, walking or writing out one file")
+    @StackTrace(false)
+    static class AnalysisPhase extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    // FlightRecorder.isInitialized() stays false until something starts a recording. it
+    // is checked first because loading an event class brings up JFR, which takes about
+    // 300 ms and would be paid by every run
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized()
+                && (new FileAnalysis().isEnabled() || new AnalysisPhase().isEnabled());
+    }
+}
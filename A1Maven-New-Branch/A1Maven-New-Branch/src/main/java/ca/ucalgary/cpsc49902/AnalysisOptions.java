@@ -0,0 +1,215 @@
+package ca.ucalgary.cpsc49902;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// command line options for AnalysisTool.main; anything that isn't a flag is an input
+// file, directory or glob (see SourceDiscovery)
+public class AnalysisOptions {
+
+    public static final String USAGE =
+            "Usage: java ca.ucalgary.cpsc49902.AnalysisTool [options] <file, directory or glob> ...\n" +
+            "Options:\n" +
+            "  --threads N          analyze up to N files in parallel (default: available processors)\n" +
+            "  --virtual-threads    run each file on its own virtual thread, N at a time\n" +
+            "  --stack-size MB      stack of each worker thread, for deeply nested source (default: 512)\n" +
+            "  --timings            print per-file and total timings to stderr\n" +
+            "  --prediction MODE    two-stage (default), sll or ll\n" +
+            "  --streaming          report invocations while parsing instead of building the parse tree\n" +
+            "  --split-members      parse the members of very large classes on several threads (antlr only)\n" +
+            "  --backend PARSER     antlr (default) or javacc, which is faster but stops at the first error\n" +
+            "  --method NAME        only report calls of methods or constructors named NAME (repeatable);\n" +
+            "                       files that never mention NAME aren't parsed, nor checked for errors\n" +
+            "  --regex REGEX        only report calls whose name REGEX finds a match in (with --method: either)\n" +
+            "  --index FILE         add the inputs' calls to the invocation index FILE instead of reporting them;\n" +
+            "                       files that haven't changed since the last run aren't analyzed again\n" +
+            "  --lookup NAME        with --index, report the calls of NAME from the index (repeatable)\n" +
+            "  --time-limit MS      report a file as timed out if lexing and parsing it takes longer (antlr only)\n" +
+            "  --token-limit N      report a file as timed out once the parser has read N tokens, counting\n" +
+            "                       lookahead (antlr only)\n" +
+            "  --max-errors N       stop parsing a file after N syntax errors (default: 100)\n" +
+            "  --profile-grammar    print JavaParser's slowest decisions to stderr at the end (turns the cache off)\n" +
+            "  --stats              print latency percentiles of each phase and the slowest files to stderr at the end\n" +
+            "  --no-mmap            always read files with CharStreams.fromPath instead of mapping large ones\n" +
+            "  --no-cache           don't read or write the result cache\n" +
+            "  --cache-dir DIR      where cached results are kept (default: .analysis-cache)\n" +
+            "  --cache-size MB      evict old cache entries above this size (default: 256)\n" +
+            "  --format FORMAT      text (default), jsonl or binary\n" +
+            "  --include GLOB       only analyze files found in directories that match GLOB (repeatable)\n" +
+            "  --exclude GLOB       skip files and directories that match GLOB (repeatable)\n" +
+            "  --daemon SOCKET      stay running and analyze files for --connect clients on a Unix socket\n" +
+            "  --connect SOCKET     have the daemon listening on SOCKET do the analysis\n" +
+            "  --stop               with --connect, shut the daemon down";
+
+    private final List<String> files = new ArrayList<>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean virtualThreads;
+    private long stackSize = ParallelAnalyzer.DEFAULT_STACK_SIZE;
+    private boolean timings;
+    private final AnalysisConfig config = new AnalysisConfig();
+    private boolean cache = true;
+    private Path cacheDir = ResultCache.DEFAULT_DIR;
+    private long cacheMaxBytes = ResultCache.DEFAULT_MAX_BYTES;
+    private RecordFormat format = RecordFormat.TEXT;
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private Path daemonSocket;
+    private Path connectSocket;
+    private boolean stopDaemon;
+    private final List<String> methods = new ArrayList<>();
+    private Pattern regex;
+    private Path indexFile;
+    private final List<String> lookups = new ArrayList<>();
+    private final List<String> analysisOptions = new ArrayList<>();  // ones a daemon would ignore
+
+    // options that change how files are analyzed; with --connect the daemon's own apply
+    private static final Set<String> ANALYSIS_OPTIONS = Set.of(
+            "--threads", "--virtual-threads", "--stack-size", "--prediction", "--streaming",
+            "--split-members", "--backend", "--time-limit", "--token-limit", "--max-errors",
+            "--no-mmap", "--no-cache", "--cache-dir", "--cache-size");
+
+    public static AnalysisOptions parse(String[] args) {
+        AnalysisOptions options = new AnalysisOptions();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (ANALYSIS_OPTIONS.contains(arg)) {
+                options.analysisOptions.add(arg);
+            }
+
+            switch (arg) {
+                case "--threads" -> options.threads = positiveInt(arg, value(args, ++i, arg));
+                case "--virtual-threads" -> options.virtualThreads = true;
+                case "--stack-size" -> options.stackSize =
+                        positiveInt(arg, value(args, ++i, arg)) * 1024L * 1024L;
+                case "--timings" -> options.timings = true;
+                case "--prediction" -> options.config.setParseMode(
+                        AnalysisTool.ParseMode.fromOption(value(args, ++i, arg)));
+                case "--streaming" -> options.config.setStreaming(true);
+                case "--split-members" -> options.config.setSplitTokens(MemberSplitter.DEFAULT_MIN_TOKENS);
+                case "--backend" -> options.config.setBackend(
+                        ParserBackend.fromOption(value(args, ++i, arg)));
+                case "--method" -> options.methods.add(value(args, ++i, arg));
+                case "--regex" -> options.regex = regex(arg, value(args, ++i, arg));
+                case "--index" -> options.indexFile = Path.of(value(args, ++i, arg));
+                case "--lookup" -> options.lookups.add(value(args, ++i, arg));
+                case "--time-limit" -> options.config.setTimeLimit(positiveInt(arg, value(args, ++i, arg)));
+                case "--token-limit" -> options.config.setTokenLimit(positiveInt(arg, value(args, ++i, arg)));
+                case "--max-errors" -> options.config.setMaxErrors(positiveInt(arg, value(args, ++i, arg)));
+                case "--profile-grammar" -> options.config.setGrammarProfile(new GrammarProfile());
+                case "--stats" -> options.config.setStats(new AnalysisStats());
+                case "--no-mmap" -> options.config.setMemoryMapped(false);
+                case "--no-cache" -> options.cache = false;
+                case "--cache-dir" -> options.cacheDir = Path.of(value(args, ++i, arg));
+                case "--cache-size" -> options.cacheMaxBytes =
+                        positiveInt(arg, value(args, ++i, arg)) * 1024L * 1024L;
+                case "--format" -> options.format = RecordFormat.fromOption(value(args, ++i, arg));
+                case "--include" -> options.includes.add(glob(arg, value(args, ++i, arg)));
+                case "--exclude" -> options.excludes.add(glob(arg, value(args, ++i, arg)));
+                case "--daemon" -> options.daemonSocket = Path.of(value(args, ++i, arg));
+                case "--connect" -> options.connectSocket = Path.of(value(args, ++i, arg));
+                case "--stop" -> options.stopDaemon = true;
+                default -> {
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    options.files.add(arg);
+                }
+            }
+        }
+
+        if (!options.methods.isEmpty() || options.regex != null) {
+            if (options.connectSocket != null || options.indexFile != null) {
+                throw new IllegalArgumentException("--method and --regex can't be used with --connect or --index");
+            }
+            options.config.setFilter(new InvocationFilter(options.methods, options.regex));
+        }
+        if (options.daemonSocket != null && options.connectSocket != null) {
+            throw new IllegalArgumentException("--daemon and --connect can't be used together");
+        }
+        if (options.connectSocket != null && !options.analysisOptions.isEmpty()) {
+            throw new IllegalArgumentException(options.analysisOptions.get(0)
+                    + " can't be used with --connect; the daemon analyzes with the options it was started with");
+        }
+        if (options.config.getGrammarProfile() != null
+                && (options.daemonSocket != null || options.connectSocket != null
+                    || options.config.getBackend() != ParserBackend.ANTLR)) {
+            throw new IllegalArgumentException(
+                    "--profile-grammar needs the antlr backend and can't be used with --daemon or --connect");
+        }
+        if (options.config.getStats() != null && (options.daemonSocket != null || options.connectSocket != null)) {
+            throw new IllegalArgumentException("--stats can't be used with --daemon or --connect");
+        }
+        if (options.indexFile != null && (options.daemonSocket != null || options.connectSocket != null)) {
+            throw new IllegalArgumentException("--index can't be used with --daemon or --connect");
+        }
+        if (!options.lookups.isEmpty() && options.indexFile == null) {
+            throw new IllegalArgumentException("--lookup needs --index FILE");
+        }
+        if (options.stopDaemon && options.connectSocket == null) {
+            throw new IllegalArgumentException("--stop needs --connect SOCKET");
+        }
+
+        return options;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static int positiveInt(String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 1) {
+                throw new IllegalArgumentException(option + " must be at least 1, got " + value);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " expects a number, got " + value);
+        }
+    }
+
+    // fails here rather than after the analysis has started
+    private static String glob(String option, String value) {
+        try {
+            FileSystems.getDefault().getPathMatcher("glob:" + value);
+            return value;
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException(option + " expects a glob, got " + value);
+        }
+    }
+
+    private static Pattern regex(String option, String value) {
+        try {
+            return Pattern.compile(value);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException(option + " expects a regular expression, got " + value);
+        }
+    }
+
+    public List<String> getFiles()     { return files; }
+    public int getThreads()            { return threads; }
+    public boolean isVirtualThreads()  { return virtualThreads; }
+    public long getStackSize()         { return stackSize; }
+    public boolean isTimings()         { return timings; }
+    public AnalysisConfig getConfig()  { return config; }
+    public boolean isCache()           { return cache; }
+    public Path getCacheDir()          { return cacheDir; }
+    public long getCacheMaxBytes()     { return cacheMaxBytes; }
+    public RecordFormat getFormat()    { return format; }
+    public List<String> getIncludes()  { return includes; }
+    public List<String> getExcludes()  { return excludes; }
+    public Path getDaemonSocket()      { return daemonSocket; }   // null unless --daemon
+    public Path getConnectSocket()     { return connectSocket; }  // null unless --connect
+    public boolean isStopDaemon()      { return stopDaemon; }
+    public Path getIndexFile()         { return indexFile; }      // null unless --index
+    public List<String> getLookups()   { return lookups; }
+}
@@ -0,0 +1,107 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * latency percentiles per phase and the slowest files, over every file analyzed with
+ * this in its AnalysisConfig (--stats). FileMetrics adds each file when it's closed:
+ * one value per phase the file went through, plus its time from being opened to the
+ * end of the walk ("file"). a file answered from the result cache only has a read.
+ *
+ * add() is synchronized, so one instance can be shared by all workers.
+ */
+public class AnalysisStats {
+
+    // how many files print() lists
+    public static final int SLOWEST = 10;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final Comparator<FileMetrics> BY_TIME = Comparator.comparingLong(FileMetrics::getElapsedNanos);
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[FileMetrics.Phase.values().length];
+    private final LatencyHistogram files = new LatencyHistogram();
+    private final PriorityQueue<FileMetrics> slowest = new PriorityQueue<>(BY_TIME);
+
+    private long cached;
+    private long bytes;
+    private long tokens;
+    private long invocations;
+    private long withErrors;
+    private long timedOut;
+
+    public AnalysisStats() {
+        for (int p = 0; p < phases.length; p++) {
+            phases[p] = new LatencyHistogram();
+        }
+    }
+
+    synchronized void add(FileMetrics file) {
+        for (FileMetrics.Phase phase : FileMetrics.Phase.values()) {
+            if (file.isTimed(phase)) {
+                phases[phase.ordinal()].record(file.getNanos(phase));
+            }
+        }
+
+        AnalysisTool.AnalysisResult result = file.getResult();
+        if (result == null) return;  // only written out
+
+        files.record(file.getElapsedNanos());
+        bytes += file.getBytes();
+        tokens += file.getTokens();
+        invocations += result.getRecords().size();
+        if (file.isCached()) cached++;
+        if (result.hasErrors()) withErrors++;
+        if (result.isTimedOut()) timedOut++;
+
+        slowest.add(file);
+        if (slowest.size() > SLOWEST) {
+            slowest.poll();
+        }
+    }
+
+    public synchronized long getFiles()                      { return files.getCount(); }
+    public synchronized long getTokens()                     { return tokens; }
+    public synchronized long getInvocations()                { return invocations; }
+    public synchronized LatencyHistogram get(FileMetrics.Phase phase) { return phases[phase.ordinal()]; }
+
+    // slowest first
+    public synchronized List<FileMetrics> getSlowest() {
+        List<FileMetrics> list = new ArrayList<>(slowest);
+        list.sort(BY_TIME.reversed());
+        return list;
+    }
+
+    public synchronized void print(PrintStream out) {
+        out.printf("stats: %d file(s) (%d from the cache), %.1f KB, %d token(s), %d invocation(s), "
+                        + "%d with syntax errors, %d timed out%n",
+                files.getCount(), cached, bytes / 1024.0, tokens, invocations, withErrors, timedOut);
+        out.printf("  %-8s %8s %10s %10s %10s %10s %10s %11s%n",
+                "phase", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "total ms");
+        for (FileMetrics.Phase phase : FileMetrics.Phase.values()) {
+            printRow(out, phase.label(), phases[phase.ordinal()]);
+        }
+        printRow(out, "file", files);
+
+        out.printf("  slowest files:%n");
+        for (FileMetrics file : getSlowest()) {
+            AnalysisTool.AnalysisResult result = file.getResult();
+            out.printf("  %10.3f ms  %s (%d bytes, %d tokens, %d invocations, %d errors%s)%n",
+                    file.getElapsedNanos() / 1e6, file.getPath(), file.getBytes(), file.getTokens(),
+                    result.getRecords().size(), result.getErrors().size(),
+                    file.isCached() ? ", cached" : result.isTimedOut() ? ", timed out" : "");
+        }
+    }
+
+    private static void printRow(PrintStream out, String label, LatencyHistogram h) {
+        out.printf("  %-8s %8d", label, h.getCount());
+        for (double p : PERCENTILES) {
+            out.printf(" %10.3f", h.getValueAtPercentile(p) / 1e6);
+        }
+        out.printf(" %10.3f %11.3f%n", h.getMax() / 1e6, h.getSum() / 1e6);
+    }
+}
@@ -1,39 +1,126 @@
 package ca.ucalgary.cpsc49902;
 
 import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.antlr.v4.runtime.misc.Interval;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class AnalysisTool {
 
-    @SuppressWarnings("ClassCanBeRecord")
+    /*
+     * how JavaParser predicts alternatives.
+     *   TWO_STAGE - try fast SLL prediction with a bail-out error strategy first and only
+     *               reparse with full LL (and the normal error reporting) if that fails
+     *   SLL       - SLL prediction only, with normal error reporting
+     *   LL        - full LL prediction only (antlr's default)
+     * TWO_STAGE reports exactly the same syntax errors as LL because every file that
+     * has an error is reparsed with LL.
+     */
+    public enum ParseMode {
+        TWO_STAGE, SLL, LL;
+
+        public static ParseMode fromOption(String value) {
+            return switch (value) {
+                case "two-stage" -> TWO_STAGE;
+                case "sll"       -> SLL;
+                case "ll"        -> LL;
+                default -> throw new IllegalArgumentException(
+                        "--prediction expects two-stage, sll or ll, got " + value);
+            };
+        }
+    }
+
+    /*
+     * an invocation and where it was found.
+     *
+     * records made by the listeners don't copy their text out of the source; they keep
+     * the file's CharStream and two char ranges, [start, prefixStop] and
+     * [suffixStart, stop], and getExpression() joins the two the first time it is
+     * called. the gap between the ranges is the whitespace/comments between a call's
+     * receiver and its suffix, which the expression leaves out. every record of a file
+     * shares that file's CharStream and file name string.
+     *
+     * the name is the text of the token that names the call (see InvocationFilter), taken
+     * by whoever made the record from the token itself. it is null when no identifier,
+     * this or super names the call, as for (a)(b), and when the record was read back
+     * from a report, which only has the expression.
+     */
     public static class InvocationRecord {
-        private final String expression;
+        private final CharStream source;
+        private final int start;
+        private final int prefixStop;
+        private final int suffixStart;
+        private final int stop;
+        private final String name;
         private final String fileName;
         private final int line;
         private final int column;
+        private String expression;
 
         public InvocationRecord(String expression, String fileName, int line, int column) {
+            this(expression, null, fileName, line, column);
+        }
+
+        public InvocationRecord(String expression, String name, String fileName, int line, int column) {
+            this(null, 0, -1, 0, -1, name, fileName, line, column);
             this.expression = expression;
-            this.fileName   = fileName;
-            this.line       = line;
-            this.column     = column;
         }
 
-        public String getExpression() { return expression; }
+        // the text of source[start, stop]
+        public InvocationRecord(CharStream source, int start, int stop,
+                                String name, String fileName, int line, int column) {
+            this(source, start, stop, stop + 1, stop, name, fileName, line, column);
+        }
+
+        // the text of source[start, prefixStop] followed by source[suffixStart, stop]
+        public InvocationRecord(CharStream source, int start, int prefixStop,
+                                int suffixStart, int stop,
+                                String name, String fileName, int line, int column) {
+            this.source      = source;
+            this.start       = start;
+            this.prefixStop  = prefixStop;
+            this.suffixStart = suffixStart;
+            this.stop        = stop;
+            this.name        = name;
+            this.fileName    = fileName;
+            this.line        = line;
+            this.column      = column;
+        }
+
+        public String getExpression() {
+            String text = expression;
+            if (text == null) {
+                if (prefixStop + 1 == suffixStart) {
+                    text = source.getText(Interval.of(start, stop));
+                } else {
+                    text = source.getText(Interval.of(start, prefixStop))
+                            + source.getText(Interval.of(suffixStart, stop));
+                }
+                // racing threads compute the same string, so no locking is needed
+                expression = text;
+            }
+            return text;
+        }
+
+        public String getName()       { return name; }
         public String getFileName()   { return fileName; }
         public int getLine()          { return line; }
         public int getColumn()        { return column; }
 
         @Override
         public String toString() {
-            return expression + ": file " + fileName +
+            return getExpression() + ": file " + fileName +
                     ", line " + line +
                     ", column " + column;
         }
@@ -63,179 +150,405 @@ public class AnalysisTool {
     // invocation listener
     public static class InvocationListener extends JavaParserBaseListener {
 
-        private final String fileName;
-        private final List<InvocationRecord> records = new ArrayList<>();
+        // the only rules it listens to, for CompositeAnalysis.add()
+        public static final int[] RULES = {
+                JavaParser.RULE_primary,
+                JavaParser.RULE_constructorInvocation,
+                JavaParser.RULE_explicitConstructorInvocation
+        };
+
+        private String fileName;
+        private InvocationFilter filter;
+        private List<InvocationRecord> records = new ArrayList<>();
 
         public InvocationListener(String fileName) {
+            this(fileName, null);
+        }
+
+        // only records the invocations filter matches (all of them when it is null)
+        public InvocationListener(String fileName, InvocationFilter filter) {
             this.fileName = fileName;
+            this.filter = filter;
         }
 
         public List<InvocationRecord> getRecords() {
             return records;
         }
 
-        private void add(String expression, Token location) {
+        // starts over for another file, so one listener can be reused (AnalysisContext). the
+        // old records list is left alone, since whoever got it from getRecords() may keep it
+        public void reset(String fileName, InvocationFilter filter) {
+            this.fileName = fileName;
+            this.filter = filter;
+            this.records = new ArrayList<>();
+        }
+
+        private void add(Token start, int stop, Token name, Token location) {
             records.add(new InvocationRecord(
-                    expression,
+                    start.getInputStream(),
+                    start.getStartIndex(),
+                    stop,
+                    InvocationFilter.nameOf(name),
                     fileName,
                     location.getLine(),
                     location.getCharPositionInLine() + 1
             ));
         }
 
+        // the primary's text up to prefixStop, then suffixStart..stop
+        private void add(Token start, int prefixStop, int suffixStart, int stop, Token name,
+                         Token location) {
+            records.add(new InvocationRecord(
+                    start.getInputStream(),
+                    start.getStartIndex(),
+                    prefixStop,
+                    suffixStart,
+                    stop,
+                    InvocationFilter.nameOf(name),
+                    fileName,
+                    location.getLine(),
+                    location.getCharPositionInLine() + 1
+            ));
+        }
+
+        // the filter is checked on the name token alone, before any text is taken
+        private boolean wanted(Token name) {
+            return filter == null || filter.matches(name);
+        }
+
+        private static Token symbol(TerminalNode node) {
+            return node == null ? null : node.getSymbol();
+        }
+
         @Override
         public void enterPrimary(JavaParser.PrimaryContext ctx) {
-            for (int i = 0; i < ctx.primarySuffix().size(); i++) {
-                JavaParser.PrimarySuffixContext s = ctx.primarySuffix().get(i);
-                String prefix = prefixUpTo(ctx, i);
+            Token prefixStart = ctx.primaryPrefix().getStart();
+            Token last = ctx.primaryPrefix().getStop();
+            int prefixStop = last.getStopIndex();
+
+            for (JavaParser.PrimarySuffixContext s : ctx.primarySuffix()) {
+                int suffixStart = s.getStart().getStartIndex();
 
                 if (s.methodCall() != null) {
-                    add(prefix + sourceText(s),
-                            s.methodCall().PERIOD().getSymbol());
+                    Token name = symbol(s.methodCall().Identifier());
+                    if (wanted(name)) {
+                        add(prefixStart, prefixStop, suffixStart, s.getStop().getStopIndex(),
+                                name, s.methodCall().PERIOD().getSymbol());
+                    }
 
                 } else if (s.unqualifiedCall() != null) {
-                    add(prefix + sourceText(s),
-                            ctx.primaryPrefix().getStart());
+                    // the name is whatever came before the '(', e.g. the identifier of foo(x)
+                    if (wanted(last)) {
+                        add(prefixStart, prefixStop, suffixStart, s.getStop().getStopIndex(),
+                                last, prefixStart);
+                    }
 
                 } else if (s.superMethodCall() != null) {
-                    add(prefix + sourceText(s),
-                            s.superMethodCall().getStart());
+                    Token name = symbol(s.superMethodCall().Identifier());
+                    if (wanted(name)) {
+                        add(prefixStart, prefixStop, suffixStart, s.getStop().getStopIndex(),
+                                name, s.superMethodCall().getStart());
+                    }
 
                 } else if (s.qualifiedNew() != null) {
-                    add(prefix + reconstructQualifiedNew(prefix, s.qualifiedNew()),
-                            s.qualifiedNew().getStart());
+                    JavaParser.QualifiedNewContext q = s.qualifiedNew();
+                    // an anonymous class body after the arguments isn't part of the expression
+                    Token name = symbol(q.Identifier());
+                    // ')' was missing and error recovery made one up
+                    if (q.CLOSE_PARENTHESIS() != null && wanted(name)) {
+                        add(prefixStart, prefixStop, q.getStart().getStartIndex(),
+                                q.CLOSE_PARENTHESIS().getSymbol().getStopIndex(),
+                                name, q.getStart());
+                    }
                 }
+
+                last = s.getStop();
+                prefixStop = last.getStopIndex();
             }
         }
 
         @Override
         public void enterConstructorInvocation(JavaParser.ConstructorInvocationContext ctx) {
             if (ctx.anonymousClassBody() != null) return;
-            add(reconstructConstructor(ctx), ctx.getStart());
+            if (ctx.CLOSE_PARENTHESIS() == null) return;  // ')' was missing and error recovery made one up
+            Token name = ctx.qualifiedIdentifier().getStop();
+            if (!wanted(name)) return;
+            add(ctx.getStart(), ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex(), name, ctx.getStart());
         }
 
         @Override
         public void enterExplicitConstructorInvocation(
                 JavaParser.ExplicitConstructorInvocationContext ctx) {
+            if (ctx.CLOSE_PARENTHESIS() == null) return;  // as above
+            Token name = symbol(ctx.THIS() != null ? ctx.THIS() : ctx.SUPER());
+            if (!wanted(name)) return;
+            add(ctx.getStart(), ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex(), name, ctx.getStart());
+        }
+    }
+
+    // handling absolute and relative paths
+    static Path resolvePath(String filePath) {
+        Path p = Paths.get(filePath);
+        return p.isAbsolute() ? p : Paths.get(System.getProperty("user.dir")).resolve(p);
+    }
 
-            Interval interval = new Interval(
-                    ctx.getStart().getStartIndex(),
-                    ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex()
-            );
+    public static class AnalysisResult {
+        private final List<InvocationRecord> records;
+        private final List<SyntaxError> errors;
+        private final String timedOut;
 
-            String text = ctx.getStart().getInputStream().getText(interval);
-            add(text, ctx.getStart());
+        public AnalysisResult(List<InvocationRecord> records, List<SyntaxError> errors) {
+            this(records, errors, null);
         }
 
-        private static String sourceText(ParserRuleContext ctx) {
-            Interval interval = new Interval(
-                    ctx.getStart().getStartIndex(),
-                    ctx.getStop().getStopIndex()
-            );
-            return ctx.getStart().getInputStream().getText(interval);
+        // timedOut says why the file was given up on (a budget it ran over, or too deep for
+        // the stack); its records and errors are left empty
+        public AnalysisResult(List<InvocationRecord> records, List<SyntaxError> errors, String timedOut) {
+            this.records = records;
+            this.errors = errors;
+            this.timedOut = timedOut;
         }
 
-        private static String reconstructConstructor(
-                JavaParser.ConstructorInvocationContext ctx) {
-
-            Interval interval = new Interval(
-                    ctx.getStart().getStartIndex(),
-                    ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex()
-            );
-            return ctx.getStart().getInputStream().getText(interval);
-        }
+        public List<InvocationRecord> getRecords() { return records; }
+        public List<SyntaxError> getErrors()       { return errors; }
+        public boolean hasErrors()                 { return !errors.isEmpty(); }
+        public boolean isTimedOut()                { return timedOut != null; }
+        public String getTimedOut()                { return timedOut; }  // null unless it timed out
+    }
 
-        private static String reconstructQualifiedNew(
-                String prefix, JavaParser.QualifiedNewContext ctx) {
+    // collects parser errors as SyntaxError objects (columns are 1-based)
+    private static class SyntaxErrorCollector extends BaseErrorListener {
 
-            Interval interval = new Interval(
-                    ctx.getStart().getStartIndex(),
-                    ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex()
-            );
+        private final List<SyntaxError> errors = new ArrayList<>();
+        private final int maxErrors;
 
-            return ctx.getStart().getInputStream().getText(interval);
+        SyntaxErrorCollector(int maxErrors) {
+            this.maxErrors = maxErrors;
         }
 
-        private static String prefixUpTo(JavaParser.PrimaryContext ctx, int suffixIndex) {
-            int start = ctx.primaryPrefix().getStart().getStartIndex();
-            int stop;
-
-            if (suffixIndex == 0) {
-                stop = ctx.primaryPrefix().getStop().getStopIndex();
-            } else {
-                stop = ctx.primarySuffix().get(suffixIndex - 1)
-                        .getStop().getStopIndex();
+        @Override
+        public void syntaxError(
+                Recognizer<?, ?> recognizer,
+                Object offendingSymbol,
+                int line,
+                int col,
+                String msg,
+                RecognitionException e
+        ) {
+            if (errors.size() == maxErrors) {
+                // nothing after this is worth recovering for
+                errors.add(new SyntaxError(line, col + 1,
+                        "more than " + maxErrors + " syntax errors, the rest of the file wasn't checked"));
+                throw new TooManyErrorsException();
             }
+            errors.add(new SyntaxError(line, col + 1, msg));
+        }
+    }
 
-            return ctx.primaryPrefix().getStart()
-                    .getInputStream()
-                    .getText(new Interval(start, stop));
+    private static class TooManyErrorsException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooManyErrorsException() {
+            super(null, null, false, false);
         }
     }
 
-    // handling absolute and relative paths
-    private static Path resolvePath(String filePath) {
-        Path p = Paths.get(filePath);
-        return p.isAbsolute() ? p : Paths.get(System.getProperty("user.dir")).resolve(p);
+    // a JavaLexer on JavaLexerATNSimulator that drops lexer errors (the parser reports what follows from them)
+    public static JavaLexer newLexer(CharStream input) {
+        JavaLexer lexer = new JavaLexer(input);
+        lexer.setInterpreter(new JavaLexerATNSimulator(lexer));
+        lexer.removeErrorListeners();
+        return lexer;
+    }
+
+    // a token stream that enforces the config's --time-limit and --token-limit, if any
+    static CommonTokenStream newTokenStream(TokenSource source, AnalysisConfig config) {
+        return config.getTokenLimit() > 0 || config.getTimeLimit() > 0
+                ? new BudgetedTokenStream(source, config.getTokenLimit(), config.getTimeLimit())
+                : new CommonTokenStream(source);
     }
 
+    /*
+     * parses the file once with parser, which reads tokens and has no listeners yet. when
+     * streamingListener is set the parse tree isn't built at all and the listener sees
+     * every rule as it is parsed; otherwise the full tree is returned for walking. when
+     * profile is set the parser is profiled and its decision statistics are added to it.
+     */
     private static JavaParser.CompilationUnitContext buildTree(
-            String filePath,
-            ANTLRErrorListener errorListener
-    ) throws IOException {
+            JavaParser parser,
+            CommonTokenStream tokens,
+            ANTLRErrorListener errorListener,
+            ParseMode mode,
+            StreamingInvocationListener streamingListener,
+            GrammarProfile profile
+    ) {
+
+        if (streamingListener != null) {
+            parser.setBuildParseTree(false);
+            parser.addParseListener(streamingListener);
+        }
 
-        JavaLexer lexer = new JavaLexer(
-                CharStreams.fromPath(resolvePath(filePath))  // relative-path-aware
-        );
-        lexer.removeErrorListeners();
+        // before the prediction mode is set; this swaps in a new ATN simulator
+        if (profile != null) {
+            parser.setProfile(true);
+        }
 
-        JavaParser parser = new JavaParser(
-                new CommonTokenStream(lexer)
-        );
-        parser.removeErrorListeners();
+        if (mode == ParseMode.TWO_STAGE) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(new BailErrorStrategy());
+            try {
+                return compilationUnit(parser, profile);
+            } catch (ParseCancellationException e) {
+                // SLL gave up: rewind and let full LL produce the tree and the real errors
+                tokens.seek(0);
+                parser.reset();
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                if (streamingListener != null) {
+                    streamingListener.reset();
+                }
+            }
+        } else if (mode == ParseMode.SLL) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        }
 
         if (errorListener != null) {
             parser.addErrorListener(errorListener);
         }
 
-        return parser.compilationUnit();
+        return compilationUnit(parser, profile);
     }
 
-    public static List<InvocationRecord> analyze(String filePath)
-            throws IOException {
+    private static JavaParser.CompilationUnitContext compilationUnit(JavaParser parser, GrammarProfile profile) {
+        JavaParser.CompilationUnitContext tree = parser.compilationUnit();
+        if (profile != null) {
+            // a profiled parser keeps its counts across reset(), so this includes a failed SLL pass
+            profile.add(parser.getParseInfo().getDecisionInfo());
+        }
+        return tree;
+    }
 
-        JavaParser.CompilationUnitContext tree =
-                buildTree(filePath, null);
+    /*
+     * lexes and parses the file exactly once and returns both the syntax errors
+     * and the invocations found in it
+     */
+    public static AnalysisResult analyzeFile(Path path, AnalysisConfig config) throws IOException {
+        try (FileMetrics metrics = FileMetrics.start(path.toString(), config)) {
+            if (metrics == null) {
+                return analyzeSource(
+                        SourceLoader.load(path, config.isMemoryMapped()),
+                        path.getFileName().toString(),
+                        config);
+            }
 
-        InvocationListener listener =
-                new InvocationListener(
-                        resolvePath(filePath).getFileName().toString()  // relative-path-aware
-                );
+            metrics.begin(FileMetrics.Phase.READ);
+            CharStream input = SourceLoader.load(path, config.isMemoryMapped());
+            metrics.setBytes(Files.size(path));
+            metrics.end();
 
-        ParseTreeWalker.DEFAULT.walk(listener, tree);
-        return listener.getRecords();
+            AnalysisResult result = analyzeSource(input, path.getFileName().toString(), config);
+            metrics.setResult(result);
+            return result;
+        }
     }
 
-    public static List<SyntaxError> getSyntaxErrors(String filePath)
-            throws IOException {
+    // same as analyzeFile() for source that has already been loaded
+    public static AnalysisResult analyzeSource(CharStream input, String fileName, AnalysisConfig config) {
+        return config.getBackend().analyze(input, fileName, config);
+    }
+
+    // analyzeSource() with JavaParser (AntlrBackend), on this thread's AnalysisContext
+    static AnalysisResult analyzeWithAntlr(CharStream input, String fileName, AnalysisConfig config) {
+        AnalysisContext context = AnalysisContext.acquire(config);
+        try {
+            return analyzeWithAntlr(input, fileName, config, context);
+        } finally {
+            context.release();
+        }
+    }
+
+    private static AnalysisResult analyzeWithAntlr(
+            CharStream input, String fileName, AnalysisConfig config, AnalysisContext context) {
+        SyntaxErrorCollector errorCollector = new SyntaxErrorCollector(config.getMaxErrors());
+        InvocationFilter filter = config.getFilter();
+        CommonTokenStream tokens = context.tokens(input, config);
+
+        // lexed up front when timed, so lexing and parsing are told apart
+        FileMetrics metrics = FileMetrics.current(config);
+        if (metrics != null) {
+            metrics.begin(FileMetrics.Phase.LEX);
+            tokens.fill();
+            metrics.setTokens(tokens.size() - 1);  // not EOF
+            metrics.begin(FileMetrics.Phase.PARSE);
+        }
+
+        // lex the whole file first and skip the parse if no token can name a wanted call;
+        // the parser then reads the tokens already in the stream
+        if (filter != null) {
+            tokens.fill();
+            if (!filter.matchesAny(tokens.getTokens())) {
+                return new AnalysisResult(new ArrayList<>(), new ArrayList<>());
+            }
+        }
+
+        try {
+            // a large file is parsed a run of members at a time on several threads, unless
+            // it has a syntax error; then it is parsed whole below for the real errors
+            if (config.getSplitTokens() > 0) {
+                tokens.fill();
+                AnalysisResult split = MemberSplitter.analyze(tokens, fileName, config);
+                if (split != null) {
+                    return split;
+                }
+            }
+
+            if (config.isStreaming()) {
+                StreamingInvocationListener listener = context.streamingListener(fileName, filter);
+                buildTree(context.parser(), tokens, errorCollector, config.getParseMode(), listener,
+                        config.getGrammarProfile());
+                return new AnalysisResult(listener.getRecords(), errorCollector.errors);
+            }
+
+            JavaParser.CompilationUnitContext tree =
+                    buildTree(context.parser(), tokens, errorCollector, config.getParseMode(), null,
+                            config.getGrammarProfile());
 
-        List<SyntaxError> errors = new ArrayList<>();
-
-        buildTree(filePath, new BaseErrorListener() {
-            @Override
-            public void syntaxError(
-                    Recognizer<?, ?> recognizer,
-                    Object offendingSymbol,
-                    int line,
-                    int col,
-                    String msg,
-                    RecognitionException e
-            ) {
-                errors.add(new SyntaxError(line, col + 1, msg));
+            InvocationListener listener = context.listener(fileName, filter);
+
+            if (metrics != null) {
+                metrics.begin(FileMetrics.Phase.WALK);
             }
-        });
+            context.walk(tree);
+            return new AnalysisResult(listener.getRecords(), errorCollector.errors);
+
+        } catch (BudgetedTokenStream.BudgetExceededException e) {
+            return new AnalysisResult(new ArrayList<>(), new ArrayList<>(), e.getMessage());
+        } catch (TooManyErrorsException e) {
+            // a file with errors has no records reported, so the partial ones aren't kept
+            return new AnalysisResult(new ArrayList<>(), errorCollector.errors);
+        }
+    }
+
+    public static AnalysisResult analyzeFile(Path path) throws IOException {
+        return analyzeFile(path, new AnalysisConfig());
+    }
 
-        return errors;
+    public static AnalysisResult analyzeFile(String filePath, AnalysisConfig config) throws IOException {
+        return analyzeFile(resolvePath(filePath), config);  // relative-path-aware
+    }
+
+    public static AnalysisResult analyzeFile(String filePath) throws IOException {
+        return analyzeFile(filePath, new AnalysisConfig());
+    }
+
+    public static List<InvocationRecord> analyze(String filePath)
+            throws IOException {
+        return analyzeFile(filePath).getRecords();
+    }
+
+    public static List<SyntaxError> getSyntaxErrors(String filePath)
+            throws IOException {
+        return analyzeFile(filePath).getErrors();
     }
 
     public static int countErrors(String filePath) throws IOException {
@@ -254,29 +567,221 @@ public class AnalysisTool {
 
     public static void main(String[] args) throws IOException {
 
-        if (args.length == 0) {
-            System.err.println(
-                    "Usage: java ca.ucalgary.cpsc49902.AnalysisTool <file1.java> [file2.java ...]"
-            );
+        AnalysisOptions options;
+        try {
+            options = AnalysisOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(AnalysisOptions.USAGE);
             return;
         }
 
-        List<InvocationRecord> all = new ArrayList<>();
+        if (options.getDaemonSocket() != null) {
+            runDaemon(options);
+            return;
+        }
+
+        if (options.isStopDaemon()) {
+            new AnalysisClient(options.getConnectSocket()).stop();
+            return;
+        }
+
+        if (options.getIndexFile() != null && !options.getLookups().isEmpty()) {
+            lookup(options);
+            return;
+        }
+
+        if (options.getFiles().isEmpty()) {
+            System.err.println(AnalysisOptions.USAGE);
+            return;
+        }
+
+        if (options.getIndexFile() != null) {
+            updateIndex(options);
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger fileCount = new AtomicInteger();
+
+        // records are written out as each file finishes instead of being collected
+        RecordWriter writer = options.getFormat().openWriter(System.out, System.out.charset());
+
+        Consumer<ParallelAnalyzer.FileResult> sink = file -> {
+            fileCount.incrementAndGet();
+
+            if (options.isTimings()) {
+                System.err.printf("%s: %.3f ms%n", file.getPath(), file.getNanos() / 1e6);
+            }
+
+            if (file.isFailed()) {
+                System.err.println(failure(file));
+                return;
+            }
+
+            AnalysisResult result = file.getResult();
+
+            if (result.isTimedOut()) {
+                System.err.println("Gave up on " + file.getPath() + ": " + result.getTimedOut());
+                return;
+            }
+
+            if (result.hasErrors()) {
+                System.err.println("Syntax errors in " + file.getPath() + ":");
+                result.getErrors().forEach(e -> System.err.println("  " + e));
+                return;
+            }
+
+            // times the output phase (--stats, JFR); null when neither is on
+            FileMetrics metrics = FileMetrics.output(file.getPath(), options.getConfig());
+            try {
+                writer.addAll(result.getRecords());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (metrics != null) metrics.close();
+            }
+        };
+
+        try (writer) {
+            if (options.getConnectSocket() != null) {
+                // the daemon does the analysis (and keeps its own cache)
+                try {
+                    new AnalysisClient(options.getConnectSocket()).analyze(
+                            options.getFiles(), options.getIncludes(), options.getExcludes(), sink);
+                } catch (IOException e) {
+                    System.err.println("Daemon at " + options.getConnectSocket() + " failed: " + e.getMessage());
+                    return;
+                }
+
+                if (options.isTimings()) {
+                    System.err.printf("total: %d file(s) in %.3f ms through %s%n",
+                            fileCount.get(),
+                            (System.nanoTime() - start) / 1e6,
+                            options.getConnectSocket());
+                }
+                return;
+            }
 
-        for (String path : args) {
+            ResultCache cache = openCache(options);
 
-            List<SyntaxError> errors = getSyntaxErrors(path);
+            // directories are still being searched while the first files are analyzed
+            try (SourceDiscovery sources = new SourceDiscovery(
+                         options.getFiles(),
+                         options.getIncludes(),
+                         options.getExcludes());
+                 ParallelAnalyzer analyzer = new ParallelAnalyzer(
+                         options.getThreads(),
+                         options.isVirtualThreads(),
+                         options.getStackSize(),
+                         fileAnalyzer(options, cache))) {
+
+                analyzer.analyzeAll(sources, sink);
+            }
 
-            if (!errors.isEmpty()) {
-                System.err.println("Syntax errors in " + path + ":");
-                errors.forEach(e -> System.err.println("  " + e));
-                continue;
+            if (options.isTimings()) {
+                System.err.printf("total: %d file(s) in %.3f ms on %d %s thread(s)%n",
+                        fileCount.get(),
+                        (System.nanoTime() - start) / 1e6,
+                        options.getThreads(),
+                        options.isVirtualThreads() ? "virtual" : "platform");
+                if (cache != null) {
+                    System.err.printf("cache: %d hit(s), %d miss(es)%n", cache.getHits(), cache.getMisses());
+                }
             }
 
-            all.addAll(analyze(path));
+            if (options.getConfig().getGrammarProfile() != null) {
+                options.getConfig().getGrammarProfile().print(System.err);
+            }
+            if (options.getConfig().getStats() != null) {
+                options.getConfig().getStats().print(System.err);
+            }
         }
+    }
+
+    // --index FILE --lookup NAME: answered from the index alone
+    private static void lookup(AnalysisOptions options) throws IOException {
+        long start = System.nanoTime();
+        try (RecordWriter writer = options.getFormat().openWriter(System.out, System.out.charset())) {
+            for (String name : options.getLookups()) {
+                writer.addAll(InvocationIndex.lookup(options.getIndexFile(), name));
+            }
+        }
+        if (options.isTimings()) {
+            System.err.printf("lookup: %.3f ms in %s%n", (System.nanoTime() - start) / 1e6, options.getIndexFile());
+        }
+    }
+
+    // --index FILE with inputs: re-analyzes what changed and rewrites the index
+    private static void updateIndex(AnalysisOptions options) throws IOException {
+        long start = System.nanoTime();
+        InvocationIndex index = InvocationIndex.load(options.getIndexFile());
+        ResultCache cache = openCache(options);
+        int analyzed;
+
+        try (SourceDiscovery sources = new SourceDiscovery(
+                     options.getFiles(),
+                     options.getIncludes(),
+                     options.getExcludes());
+             ParallelAnalyzer analyzer = new ParallelAnalyzer(
+                     options.getThreads(),
+                     options.isVirtualThreads(),
+                     options.getStackSize(),
+                     fileAnalyzer(options, cache))) {
+
+            analyzed = index.update(sources, analyzer, file -> {
+                if (file.isFailed()) {
+                    System.err.println(failure(file));
+                } else if (file.getResult().isTimedOut()) {
+                    System.err.println("Gave up on " + file.getPath() + ": " + file.getResult().getTimedOut());
+                } else {
+                    System.err.println("Syntax errors in " + file.getPath() + ":");
+                    file.getResult().getErrors().forEach(e -> System.err.println("  " + e));
+                }
+            });
+        }
+
+        index.write(options.getIndexFile());
+        System.err.printf("index: %d file(s), %d analyzed, in %.3f ms%n",
+                index.getFileCount(), analyzed, (System.nanoTime() - start) / 1e6);
+        if (options.getConfig().getStats() != null) {
+            options.getConfig().getStats().print(System.err);
+        }
+    }
+
+    // serves requests from AnalysisClient until one of them sends stop
+    private static void runDaemon(AnalysisOptions options) throws IOException {
+        ResultCache cache = openCache(options);
+
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(
+                     options.getThreads(),
+                     options.isVirtualThreads(),
+                     options.getStackSize(),
+                     fileAnalyzer(options, cache));
+             AnalysisDaemon daemon = new AnalysisDaemon(options.getDaemonSocket(), analyzer)) {
+
+            System.err.println("Listening on " + options.getDaemonSocket());
+            daemon.serve();
+        }
+    }
+
+    private static ResultCache openCache(AnalysisOptions options) throws IOException {
+        // a cache hit isn't parsed, so it would be missing from the grammar profile
+        return options.isCache() && options.getConfig().getGrammarProfile() == null
+                ? new ResultCache(options.getCacheDir(), options.getCacheMaxBytes())
+                : null;
+    }
+
+    private static ParallelAnalyzer.FileAnalyzer fileAnalyzer(AnalysisOptions options, ResultCache cache) {
+        return cache != null
+                ? path -> cache.analyze(path, options.getConfig())
+                : path -> analyzeFile(path, options.getConfig());
+    }
 
-        System.out.println(formatOutput(all));
+    // how a failed file is reported: unreadable, or its analysis threw
+    private static String failure(ParallelAnalyzer.FileResult file) {
+        return (file.getFailure() instanceof IOException ? "Could not read " : "Could not analyze ")
+                + file.getPath() + ": " + file.getFailure();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+
+// JavaParser, with the prediction mode and streaming setting from the config
+public class AntlrBackend implements ParserBackend {
+
+    @Override
+    public String getName() {
+        return "antlr";
+    }
+
+    @Override
+    public AnalysisTool.AnalysisResult analyze(CharStream input, String fileName, AnalysisConfig config) {
+        return AnalysisTool.analyzeWithAntlr(input, fileName, config);
+    }
+}
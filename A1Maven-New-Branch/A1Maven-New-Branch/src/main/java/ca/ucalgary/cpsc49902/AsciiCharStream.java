@@ -0,0 +1,114 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * CharStream over a buffer of pure 7-bit ASCII bytes, one byte per character.
+ *
+ * for ASCII, UTF-8 bytes and code points are the same thing, so the lexer can read
+ * straight out of the buffer (usually a MappedByteBuffer from SourceLoader) without
+ * decoding or copying the file. behaves exactly like the stream CharStreams.fromPath()
+ * builds for the same file. only use it after checking the bytes with isAscii().
+ */
+public class AsciiCharStream implements CharStream {
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer data;
+    private final int size;
+    private final String sourceName;
+    private int position;
+
+    public AsciiCharStream(ByteBuffer data, String sourceName) {
+        this.data = data;
+        this.size = data.limit();
+        this.sourceName = sourceName;
+    }
+
+    // true when no byte in the buffer has its high bit set
+    public static boolean isAscii(ByteBuffer data) {
+        int limit = data.limit();
+        int i = 0;
+
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((data.getLong(i) & HIGH_BITS) != 0) return false;
+        }
+        for (; i < limit; i++) {
+            if (data.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.min(interval.a, size);
+        int length = Math.min(interval.b - interval.a + 1, size - start);
+        if (length <= 0) return "";
+
+        byte[] bytes = new byte[length];
+        data.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        int offset;
+        if (i > 0) {
+            offset = position + i - 1;
+            if (offset >= size) return IntStream.EOF;
+        } else if (i < 0) {
+            offset = position + i;
+            if (offset < 0) return IntStream.EOF;
+        } else {
+            return 0;  // undefined
+        }
+        return data.get(offset);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = index;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName == null || sourceName.isEmpty() ? UNKNOWN_SOURCE_NAME : sourceName;
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
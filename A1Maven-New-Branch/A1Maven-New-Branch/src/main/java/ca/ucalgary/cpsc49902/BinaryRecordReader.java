@@ -0,0 +1,94 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// reads RecordFormat.BINARY; see BinaryRecordWriter for the layout
+public class BinaryRecordReader implements RecordReader {
+
+    // a single string longer than this means the stream is corrupt
+    private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+
+    private final DataInputStream in;
+    private final List<String> table = new ArrayList<>();
+    private boolean started;
+
+    public BinaryRecordReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public AnalysisTool.InvocationRecord next() throws IOException {
+        if (!started) {
+            if (in.readInt() != BinaryRecordWriter.MAGIC) {
+                throw new IOException("not a binary record stream");
+            }
+            started = true;
+        }
+
+        while (true) {
+            int tag = in.read();
+            switch (tag) {
+                case -1 -> {
+                    return null;
+                }
+                case BinaryRecordWriter.STRING -> table.add(readUtf8());
+                case BinaryRecordWriter.RECORD -> {
+                    return record(lookup(readVarint()));
+                }
+                case BinaryRecordWriter.LITERAL -> {
+                    return record(readUtf8());
+                }
+                default -> throw new IOException("bad entry tag " + tag);
+            }
+        }
+    }
+
+    private AnalysisTool.InvocationRecord record(String expression) throws IOException {
+        String file = lookup(readVarint());
+        int line = readVarint();
+        int column = readVarint();
+        return new AnalysisTool.InvocationRecord(expression, file, line, column);
+    }
+
+    private String lookup(int index) throws IOException {
+        if (index >= table.size()) {
+            throw new IOException("string " + index + " used before it was defined");
+        }
+        return table.get(index);
+    }
+
+    private String readUtf8() throws IOException {
+        int length = readVarint();
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("truncated record");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) throw new IOException("varint out of range");
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
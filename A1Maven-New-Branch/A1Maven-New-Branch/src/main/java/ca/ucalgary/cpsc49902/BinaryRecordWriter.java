@@ -0,0 +1,106 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * RecordFormat.BINARY.
+ *
+ *   stream  := MAGIC entry*
+ *   entry   := STRING  len:varint utf8[len]            adds a string to the table
+ *            | RECORD  expr:varint file:varint line:varint column:varint
+ *            | LITERAL len:varint utf8[len] file:varint line:varint column:varint
+ *
+ * the string table is built as the stream goes: a string is defined once, right
+ * before the first record that uses it, and after that records refer to it by index.
+ * file names always go in the table. expressions are interned until the table holds
+ * MAX_INTERNED of them; expressions seen after that are written inline as LITERAL, so
+ * neither side's table grows without bound on huge runs. varints are unsigned LEB128.
+ */
+public class BinaryRecordWriter implements RecordWriter {
+
+    static final int MAGIC = 0x4A495231;  // "JIR1"
+    static final int STRING = 1;
+    static final int RECORD = 2;
+    static final int LITERAL = 3;
+
+    static final int MAX_INTERNED = 1 << 16;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> files = new HashMap<>();
+    private final Map<String, Integer> expressions = new HashMap<>();
+    private int tableSize;
+    private boolean started;
+
+    public BinaryRecordWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    @Override
+    public void add(AnalysisTool.InvocationRecord record) throws IOException {
+        start();
+
+        Integer file = files.get(record.getFileName());
+        if (file == null) {
+            file = define(record.getFileName());
+            files.put(record.getFileName(), file);
+        }
+
+        String expression = record.getExpression();
+        Integer interned = expressions.get(expression);
+        if (interned == null && expressions.size() < MAX_INTERNED) {
+            interned = define(expression);
+            expressions.put(expression, interned);
+        }
+
+        if (interned != null) {
+            out.writeByte(RECORD);
+            writeVarint(interned);
+        } else {
+            out.writeByte(LITERAL);
+            writeUtf8(expression);
+        }
+        writeVarint(file);
+        writeVarint(record.getLine());
+        writeVarint(record.getColumn());
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            out.writeInt(MAGIC);
+            started = true;
+        }
+    }
+
+    private int define(String s) throws IOException {
+        out.writeByte(STRING);
+        writeUtf8(s);
+        return tableSize++;
+    }
+
+    private void writeUtf8(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // an empty run still gets the magic number, so readers can tell it apart from garbage
+    @Override
+    public void close() throws IOException {
+        start();
+        out.flush();
+    }
+}
@@ -0,0 +1,90 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * a token stream that stops the parse when a file runs over its budget (--time-limit,
+ * --token-limit), so one pathological file can't stall a batch.
+ *
+ * every token JavaParser moves past goes through consume(): the ones it matches, the
+ * ones prediction scans ahead over before seeking back, and the ones error recovery
+ * skips. that makes it the one place where all the parser's work shows up, so both
+ * limits are checked there. the token limit counts a token again each time it is
+ * scanned, which is what runs away on bad input; the clock is read every CHECK_EVERY
+ * tokens. the time limit runs from when the budget is made, so it includes lexing.
+ *
+ * the limits are per file, not per stream: the Budget is kept apart so every parse of
+ * one file can draw on it. --split-members parses a file's runs on several threads,
+ * each through its own stream, and a TWO_STAGE retry parses a run again; all of them
+ * share the budget of the file's stream (getBudget()), and so does the whole-file parse
+ * when splitting fails.
+ *
+ * going over throws BudgetExceededException out of the parse. it isn't a
+ * ParseCancellationException, so a TWO_STAGE parse gives up instead of retrying with LL.
+ */
+public class BudgetedTokenStream extends CommonTokenStream {
+
+    private static final int CHECK_EVERY = 1024;
+
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // one file's limits, the tokens read against them so far, and the deadline
+    public static final class Budget {
+        private final long tokenLimit;
+        private final long timeLimitMillis;
+        private final long deadline;
+        // the runs of a split file are parsed at the same time
+        private final AtomicLong consumed = new AtomicLong();
+
+        // a limit of 0 is no limit
+        public Budget(long tokenLimit, long timeLimitMillis) {
+            this.tokenLimit = tokenLimit > 0 ? tokenLimit : Long.MAX_VALUE;
+            this.timeLimitMillis = timeLimitMillis;
+            this.deadline = timeLimitMillis > 0
+                    ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeLimitMillis)
+                    : 0;
+        }
+
+        void consume() {
+            long n = consumed.incrementAndGet();
+            if (n > tokenLimit) {
+                throw new BudgetExceededException("parser read more than " + tokenLimit + " tokens");
+            }
+            if (deadline != 0 && n % CHECK_EVERY == 0 && System.nanoTime() - deadline > 0) {
+                throw new BudgetExceededException("parse took longer than " + timeLimitMillis + " ms");
+            }
+        }
+    }
+
+    private final Budget budget;
+
+    // a limit of 0 is no limit
+    public BudgetedTokenStream(TokenSource source, long tokenLimit, long timeLimitMillis) {
+        this(source, new Budget(tokenLimit, timeLimitMillis));
+    }
+
+    public BudgetedTokenStream(TokenSource source, Budget budget) {
+        super(source);
+        this.budget = budget;
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public void consume() {
+        super.consume();
+        budget.consume();
+    }
+}
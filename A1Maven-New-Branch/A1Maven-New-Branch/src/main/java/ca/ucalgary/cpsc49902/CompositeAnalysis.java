@@ -0,0 +1,191 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.RuleStopState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/*
+ * runs any number of analyses (JavaParser listeners) over a tree in one walk, instead
+ * of one ParseTreeWalker pass each. an analysis added with rules only hears about
+ * contexts of those rules (JavaParser.RULE_*): enterEveryRule() and its enterX()
+ * going in, exitX() and exitEveryRule() coming out, as a walk of its own would call
+ * them. one added without rules hears everything, terminals and error nodes too.
+ * each node goes to its analyses in the order they were added.
+ *
+ * a subtree is only walked if a rule someone listens for can occur in it at all,
+ * which the grammar decides: the rules reachable from each rule are worked out once
+ * from the parser's ATN. so with only InvocationListener's rules, imports, modifiers,
+ * types, parameter lists and literals are entered and left without looking at their
+ * children.
+ * an analysis that hears everything turns that off.
+ *
+ * the walk is iterative, so a deeply nested tree doesn't need a deep java stack: the
+ * open rules and the index of each one's next child are kept in two arrays. an
+ * instance keeps them between walks, so it walks one tree at a time.
+ */
+public final class CompositeAnalysis {
+
+    private static final int RULES = JavaParser.ruleNames.length;
+
+    // the rules that can occur anywhere below a context of each rule
+    private static final BitSet[] BELOW = below(JavaParser._ATN);
+
+    private static final ParseTreeListener[] NONE = new ParseTreeListener[0];
+
+    private final ParseTreeListener[][] byRule = new ParseTreeListener[RULES][];
+    private ParseTreeListener[] everything = NONE;
+    private final BitSet wanted = new BitSet(RULES);
+    private final boolean[] descend = new boolean[RULES];
+
+    private ParserRuleContext[] open = new ParserRuleContext[64];
+    private int[] next = new int[64];
+
+    public CompositeAnalysis() {
+        Arrays.fill(byRule, NONE);
+    }
+
+    // analysis hears about the given rules, or about everything when there are none
+    public CompositeAnalysis add(ParseTreeListener analysis, int... rules) {
+        if (rules.length == 0) {
+            everything = append(everything, analysis);
+        }
+        for (int rule : rules) {
+            if (rule < 0 || rule >= RULES) {
+                throw new IllegalArgumentException("No parser rule " + rule);
+            }
+            byRule[rule] = append(byRule[rule], analysis);
+            wanted.set(rule);
+        }
+        for (int r = 0; r < RULES; r++) {
+            descend[r] = everything.length > 0 || BELOW[r].intersects(wanted);
+        }
+        return this;
+    }
+
+    public void walk(ParseTree tree) {
+        if (!(tree instanceof ParserRuleContext root)) {
+            visit(tree);  // a single terminal or error node
+            return;
+        }
+
+        int depth = 0;
+        open[0] = root;
+        next[0] = 0;
+        enter(root);
+
+        while (depth >= 0) {
+            ParserRuleContext ctx = open[depth];
+            int i = next[depth];
+
+            if (ctx.children == null || i == ctx.children.size() || !descend[ctx.getRuleIndex()]) {
+                exit(ctx);
+                open[depth--] = null;
+                continue;
+            }
+            next[depth] = i + 1;
+
+            ParseTree child = ctx.children.get(i);
+            if (child instanceof ParserRuleContext rule) {
+                if (++depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                open[depth] = rule;
+                next[depth] = 0;
+                enter(rule);
+            } else if (everything.length > 0) {
+                visit(child);
+            }
+        }
+    }
+
+    private void enter(ParserRuleContext ctx) {
+        for (ParseTreeListener analysis : everything) {
+            analysis.enterEveryRule(ctx);
+            ctx.enterRule(analysis);
+        }
+        for (ParseTreeListener analysis : byRule[ctx.getRuleIndex()]) {
+            analysis.enterEveryRule(ctx);
+            ctx.enterRule(analysis);
+        }
+    }
+
+    private void exit(ParserRuleContext ctx) {
+        for (ParseTreeListener analysis : everything) {
+            ctx.exitRule(analysis);
+            analysis.exitEveryRule(ctx);
+        }
+        for (ParseTreeListener analysis : byRule[ctx.getRuleIndex()]) {
+            ctx.exitRule(analysis);
+            analysis.exitEveryRule(ctx);
+        }
+    }
+
+    private void visit(ParseTree node) {
+        for (ParseTreeListener analysis : everything) {
+            if (node instanceof ErrorNode error) {
+                analysis.visitErrorNode(error);
+            } else if (node instanceof TerminalNode terminal) {
+                analysis.visitTerminal(terminal);
+            }
+        }
+    }
+
+    private static ParseTreeListener[] append(ParseTreeListener[] list, ParseTreeListener analysis) {
+        ParseTreeListener[] grown = Arrays.copyOf(list, list.length + 1);
+        grown[list.length] = analysis;
+        return grown;
+    }
+
+    // the rules each rule calls directly (its RuleTransitions), then closed transitively.
+    // a rule's stop state leads back to every caller, so the search stops there
+    static BitSet[] below(ATN atn) {
+        int rules = atn.ruleToStartState.length;
+        BitSet[] calls = new BitSet[rules];
+        for (int r = 0; r < rules; r++) {
+            calls[r] = new BitSet(rules);
+            BitSet seen = new BitSet(atn.states.size());
+            Deque<ATNState> todo = new ArrayDeque<>();
+            todo.push(atn.ruleToStartState[r]);
+            while (!todo.isEmpty()) {
+                ATNState state = todo.pop();
+                if (seen.get(state.stateNumber) || state instanceof RuleStopState) continue;
+                seen.set(state.stateNumber);
+                for (int t = 0; t < state.getNumberOfTransitions(); t++) {
+                    Transition transition = state.transition(t);
+                    if (transition instanceof RuleTransition call) {
+                        calls[r].set(call.target.ruleIndex);
+                        todo.push(call.followState);
+                    } else {
+                        todo.push(transition.target);
+                    }
+                }
+            }
+        }
+
+        boolean grew = true;
+        while (grew) {
+            grew = false;
+            for (int r = 0; r < rules; r++) {
+                int before = calls[r].cardinality();
+                for (int c = calls[r].nextSetBit(0); c >= 0; c = calls[r].nextSetBit(c + 1)) {
+                    calls[r].or(calls[c]);
+                }
+                grew |= calls[r].cardinality() != before;
+            }
+        }
+        return calls;
+    }
+}
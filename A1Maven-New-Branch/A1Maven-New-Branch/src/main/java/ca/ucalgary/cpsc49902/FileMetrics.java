@@ -0,0 +1,148 @@
+package ca.ucalgary.cpsc49902;
+
+import java.util.Locale;
+
+/*
+ * where the time for one file went, for --stats (AnalysisStats) and Flight Recorder
+ * (AnalysisEvents). only made while one of them is listening; start() returns null
+ * otherwise, and every use is behind a null check.
+ *
+ * the code that reads a file starts it (AnalysisTool.analyzeFile(), ResultCache) and
+ * closes it after the analysis; in between it is the thread's current() one, which
+ * the backends mark the phases on. phases follow each other, so begin() ends the one
+ * before. with metrics on, AnalysisTool lexes the whole file before parsing so the two
+ * can be timed apart; javacc lexes as it parses, so all of that counts as parsing.
+ * writing the records out is timed separately, with output().
+ */
+public final class FileMetrics implements AutoCloseable {
+
+    public enum Phase {
+        READ, LEX, PARSE, WALK, OUTPUT;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final ThreadLocal<FileMetrics> CURRENT = new ThreadLocal<>();
+
+    private final String path;
+    private final AnalysisStats stats;
+    private final AnalysisEvents.FileAnalysis fileEvent;  // null when nothing was recording at the start
+    private final long started = System.nanoTime();
+    private final long[] nanos = new long[Phase.values().length];
+    private final boolean[] timed = new boolean[nanos.length];
+
+    private Phase phase;
+    private long phaseStarted;
+    private AnalysisEvents.AnalysisPhase phaseEvent;
+
+    private long bytes;
+    private int tokens;
+    private AnalysisTool.AnalysisResult result;
+    private boolean cached;
+    private long elapsed;
+
+    private FileMetrics(String path, AnalysisStats stats, boolean recording) {
+        this.path = path;
+        this.stats = stats;
+        this.fileEvent = recording ? new AnalysisEvents.FileAnalysis() : null;
+        if (fileEvent != null) {
+            fileEvent.begin();
+        }
+    }
+
+    // metrics for reading and analyzing path, or null when nothing is listening
+    static FileMetrics start(String path, AnalysisConfig config) {
+        boolean recording = AnalysisEvents.isRecording();
+        if (config.getStats() == null && !recording) return null;
+        FileMetrics metrics = new FileMetrics(path, config.getStats(), recording);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    // the metrics of the file this thread is analyzing, or null
+    static FileMetrics current(AnalysisConfig config) {
+        return config.getStats() != null || AnalysisEvents.isRecording() ? CURRENT.get() : null;
+    }
+
+    // metrics for writing out path's records, already in the OUTPUT phase; or null
+    static FileMetrics output(String path, AnalysisConfig config) {
+        boolean recording = AnalysisEvents.isRecording();
+        if (config.getStats() == null && !recording) return null;
+        FileMetrics metrics = new FileMetrics(path, config.getStats(), recording);
+        metrics.begin(Phase.OUTPUT);
+        return metrics;
+    }
+
+    void begin(Phase next) {
+        end();
+        phase = next;
+        phaseStarted = System.nanoTime();
+        if (fileEvent != null) {
+            AnalysisEvents.AnalysisPhase event = new AnalysisEvents.AnalysisPhase();
+            if (event.isEnabled()) {
+                event.begin();
+                phaseEvent = event;
+            }
+        }
+    }
+
+    // ends the current phase, if any
+    void end() {
+        if (phase == null) return;
+        nanos[phase.ordinal()] += System.nanoTime() - phaseStarted;
+        timed[phase.ordinal()] = true;
+        if (phaseEvent != null) {
+            phaseEvent.path = path;
+            phaseEvent.phase = phase.label();
+            phaseEvent.commit();
+            phaseEvent = null;
+        }
+        phase = null;
+    }
+
+    void setBytes(long bytes)   { this.bytes = bytes; }
+    void setTokens(int tokens)  { this.tokens = tokens; }
+    void setCached()            { this.cached = true; }
+
+    // the file's outcome; a file closed without one (it couldn't be read) isn't reported
+    void setResult(AnalysisTool.AnalysisResult result) {
+        this.result = result;
+    }
+
+    @Override
+    public void close() {
+        end();
+        elapsed = System.nanoTime() - started;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+
+        boolean output = timed[Phase.OUTPUT.ordinal()];
+        if (result == null && !output) return;
+
+        if (stats != null) {
+            stats.add(this);
+        }
+        if (result != null && fileEvent != null && fileEvent.shouldCommit()) {
+            fileEvent.path = path;
+            fileEvent.bytes = bytes;
+            fileEvent.tokens = tokens;
+            fileEvent.invocations = result.getRecords().size();
+            fileEvent.errors = result.getErrors().size();
+            fileEvent.timedOut = result.isTimedOut();
+            fileEvent.cached = cached;
+            fileEvent.commit();
+        }
+    }
+
+    public String getPath()                        { return path; }
+    public long getBytes()                         { return bytes; }
+    public int getTokens()                         { return tokens; }
+    public boolean isCached()                      { return cached; }
+    public AnalysisTool.AnalysisResult getResult() { return result; }   // null for output()
+    public long getNanos(Phase phase)              { return nanos[phase.ordinal()]; }
+    public boolean isTimed(Phase phase)            { return timed[phase.ordinal()]; }
+    public long getElapsedNanos()                  { return elapsed; }           // start to close()
+}
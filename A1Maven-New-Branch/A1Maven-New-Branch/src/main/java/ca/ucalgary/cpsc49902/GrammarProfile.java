@@ -0,0 +1,126 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.atn.DecisionInfo;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * per-decision prediction statistics summed over every file JavaParser parses with
+ * this profile in its AnalysisConfig (--profile-grammar). the parser runs with
+ * antlr's ProfilingATNSimulator, and after each file its DecisionInfo is added here.
+ *
+ * with TWO_STAGE prediction a file the SLL pass gives up on is counted twice (once
+ * per pass), which is what it costs. only the ANTLR backend is profiled.
+ *
+ * add() is synchronized, so one profile can be shared by all workers.
+ */
+public class GrammarProfile {
+
+    // how many decisions print() lists
+    public static final int TOP = 25;
+
+    public static class Decision {
+        private final int decision;
+        private final String rule;
+        private long invocations;
+        private long nanos;
+        private long sllLookahead;
+        private long sllMaxLookahead;
+        private long llFallbacks;
+        private long llLookahead;
+        private long llMaxLookahead;
+        private long ambiguities;
+        private long contextSensitivities;
+        private long errors;
+
+        Decision(int decision, String rule) {
+            this.decision = decision;
+            this.rule = rule;
+        }
+
+        public int getDecision()               { return decision; }
+        public String getRule()                { return rule; }
+        public long getInvocations()           { return invocations; }
+        public long getNanos()                 { return nanos; }
+        public long getSllMaxLookahead()       { return sllMaxLookahead; }
+        public long getLlFallbacks()           { return llFallbacks; }
+        public long getLlMaxLookahead()        { return llMaxLookahead; }
+        public long getAmbiguities()           { return ambiguities; }
+        public long getContextSensitivities()  { return contextSensitivities; }
+        public long getErrors()                { return errors; }
+
+        // tokens looked at per prediction, SLL and LL together
+        public double getAverageLookahead() {
+            return invocations == 0 ? 0 : (double) (sllLookahead + llLookahead) / invocations;
+        }
+    }
+
+    private final Decision[] decisions;
+    private int files;
+
+    public GrammarProfile() {
+        String[] ruleNames = JavaParser.ruleNames;
+        decisions = new Decision[JavaParser._ATN.getNumberOfDecisions()];
+        for (int d = 0; d < decisions.length; d++) {
+            decisions[d] = new Decision(d, ruleNames[JavaParser._ATN.decisionToState.get(d).ruleIndex]);
+        }
+    }
+
+    // the statistics of one parse (parser.getParseInfo().getDecisionInfo())
+    public synchronized void add(DecisionInfo[] parse) {
+        files++;
+        for (DecisionInfo info : parse) {
+            Decision d = decisions[info.decision];
+            d.invocations          += info.invocations;
+            d.nanos                += info.timeInPrediction;
+            d.sllLookahead         += info.SLL_TotalLook;
+            d.sllMaxLookahead       = Math.max(d.sllMaxLookahead, info.SLL_MaxLook);
+            d.llFallbacks          += info.LL_Fallback;
+            d.llLookahead          += info.LL_TotalLook;
+            d.llMaxLookahead        = Math.max(d.llMaxLookahead, info.LL_MaxLook);
+            d.ambiguities          += info.ambiguities.size();
+            d.contextSensitivities += info.contextSensitivities.size();
+            d.errors               += info.errors.size();
+        }
+    }
+
+    public synchronized int getFiles() {
+        return files;
+    }
+
+    public synchronized long getTotalNanos() {
+        long total = 0;
+        for (Decision d : decisions) total += d.nanos;
+        return total;
+    }
+
+    // decisions that were predicted at least once, most time spent first
+    public synchronized Decision[] getDecisions() {
+        return Arrays.stream(decisions)
+                .filter(d -> d.invocations > 0)
+                .sorted(Comparator.comparingLong(Decision::getNanos).reversed())
+                .toArray(Decision[]::new);
+    }
+
+    public void print(PrintStream out) {
+        Decision[] hot = getDecisions();
+        long total = getTotalNanos();
+
+        out.printf("grammar profile: %d parse(s), %.3f ms in prediction, %d of %d decisions used%n",
+                getFiles(), total / 1e6, hot.length, decisions.length);
+        out.printf("  %-8s %-34s %11s %9s %6s %8s %7s %7s %6s %6s %6s %6s%n",
+                "decision", "rule", "invocations", "time ms", "time%",
+                "avg look", "SLL max", "LL fall", "LL max", "ctx", "ambig", "errors");
+
+        for (int i = 0; i < Math.min(TOP, hot.length); i++) {
+            Decision d = hot[i];
+            out.printf("  %-8d %-34s %11d %9.3f %5.1f%% %8.2f %7d %7d %6d %6d %6d %6d%n",
+                    d.decision, d.rule, d.invocations, d.nanos / 1e6,
+                    total == 0 ? 0.0 : 100.0 * d.nanos / total,
+                    d.getAverageLookahead(), d.sllMaxLookahead, d.llFallbacks,
+                    d.llMaxLookahead, d.contextSensitivities, d.ambiguities, d.errors);
+        }
+    }
+}
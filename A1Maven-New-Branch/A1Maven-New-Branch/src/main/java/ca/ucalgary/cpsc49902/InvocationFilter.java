@@ -0,0 +1,81 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.Token;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/*
+ * which invocations to report (--method, --regex). an invocation is named by the token
+ * right before its argument list: the method name, the class name of a constructor
+ * call (the last part of a qualified one), or this/super for an explicit constructor
+ * invocation. it matches if its name is one of the names or the regex finds a match
+ * anywhere in it (anchor it with ^ and $ to match whole names).
+ *
+ * the listeners and Java12Parser check the name token before they build a record, and
+ * files whose tokens contain no name that matches (matchesAny()) aren't parsed at all.
+ * a file that isn't parsed has no syntax errors reported.
+ */
+public class InvocationFilter {
+
+    private final Set<String> names;
+    private final Pattern regex;
+
+    // lengths of the names in code points (what token indexes count), so most tokens
+    // are turned down without taking their text
+    private final BitSet lengths = new BitSet();
+
+    // regex may be null
+    public InvocationFilter(Collection<String> names, Pattern regex) {
+        this.names = new TreeSet<>(names);
+        this.regex = regex;
+        for (String name : this.names) {
+            lengths.set(name.codePointCount(0, name.length()));
+        }
+    }
+
+    public boolean matches(String name) {
+        return names.contains(name) || (regex != null && regex.matcher(name).find());
+    }
+
+    // only an Identifier, this or super can name a call, e.g. not the ')' before (a)(b)'s
+    // arguments; null (a token error recovery left out) never matches
+    public boolean matches(Token name) {
+        if (name == null) return false;
+        int type = name.getType();
+        if (type != JavaLexer.Identifier && type != JavaLexer.THIS && type != JavaLexer.SUPER) {
+            return false;
+        }
+        if (regex == null && !lengths.get(name.getStopIndex() - name.getStartIndex() + 1)) {
+            return false;
+        }
+        return matches(name.getText());
+    }
+
+    // the text of a token that can name a call, or null, as matches(Token) decides
+    public static String nameOf(Token name) {
+        if (name == null) return null;
+        int type = name.getType();
+        return type == JavaLexer.Identifier || type == JavaLexer.THIS || type == JavaLexer.SUPER
+                ? name.getText()
+                : null;
+    }
+
+    // whether any of a file's tokens matches; the lexer-only prescan
+    public boolean matchesAny(List<Token> tokens) {
+        for (Token t : tokens) {
+            if (matches(t)) return true;
+        }
+        return false;
+    }
+
+    // stable for the same names and regex (ResultCache keys on it)
+    @Override
+    public String toString() {
+        return "names " + names + (regex == null ? "" : " regex " + regex.pattern());
+    }
+}
@@ -0,0 +1,414 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/*
+ * on-disk inverted index of invocations (--index FILE): the simple name of every call
+ * (see InvocationFilter: the token right before its arguments) to where it is made.
+ *
+ *   index    := MAGIC version:int files names postings
+ *   files    := count:varint ( path:utf8 size:varlong modified:varlong )*
+ *   names    := count:varint ( shared:varint suffix:utf8 length:varint )*
+ *   postings := ( count:varint ( file:varint line:varint column:varint )* )*   one list per name
+ *
+ * names are sorted and front coded (the length of the prefix shared with the previous
+ * name, then the rest), and a name's id is its position. each name's posting list is
+ * sorted by file id, line and column and delta encoded: file is the difference from
+ * the previous file id, line the difference from the previous line when the file is
+ * the same (otherwise the line itself), column the column itself. length is the byte
+ * length of the name's posting list, so lookup() decodes just the one it wants.
+ * varints are unsigned LEB128, utf8 a varint byte length and the bytes.
+ *
+ * files are the absolute paths of the inputs, with the size and modification time they
+ * had when they were analyzed. update() only re-analyzes files whose size or time has
+ * changed (or that are new) and drops files that are no longer among the inputs; the
+ * rest of the index is decoded and written back as it was. a file with syntax errors
+ * (or that timed out) is kept with no calls, the same way the report leaves its records out.
+ */
+public class InvocationIndex {
+
+    static final int MAGIC = 0x4A494931;  // "JII1"
+    static final int VERSION = 1;
+
+    // a string longer than this means the index is corrupt
+    private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+
+    // one call in one file
+    private record Call(String name, int line, int column) {
+    }
+
+    private record IndexedFile(long size, long modified, List<Call> calls) {
+    }
+
+    private static final Comparator<Call> BY_POSITION =
+            Comparator.comparingInt(Call::line).thenComparingInt(Call::column);
+
+    // absolute path -> what was found in it, in path order
+    private final TreeMap<String, IndexedFile> files = new TreeMap<>();
+
+    /*
+     * the whole index at file, decoded so it can be updated, or an empty one if there is
+     * no file yet. an index from another version or that can't be decoded is an
+     * IOException; delete it to start over.
+     */
+    public static InvocationIndex load(Path file) throws IOException {
+        InvocationIndex index = new InvocationIndex();
+        ByteBuffer in;
+        try {
+            in = read(file);
+        } catch (NoSuchFileException e) {
+            return index;
+        }
+
+        try {
+            Header header = Header.read(in, file);
+            List<List<Call>> calls = new ArrayList<>(header.paths.length);
+            for (int f = 0; f < header.paths.length; f++) {
+                calls.add(new ArrayList<>());
+            }
+            for (String name : header.names) {
+                decodePostings(in, (f, line, column) -> calls.get(f).add(new Call(name, line, column)),
+                        header.paths.length);
+            }
+            for (int f = 0; f < header.paths.length; f++) {
+                List<Call> found = calls.get(f);
+                found.sort(BY_POSITION);
+                index.files.put(header.paths[f],
+                        new IndexedFile(header.sizes[f], header.modified[f], found));
+            }
+            return index;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is truncated or isn't an invocation index");
+        }
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /*
+     * brings the index up to date with the files inputs lists: analyzes the ones that
+     * are new or have changed with analyzer and forgets the ones that aren't listed any
+     * more. results with syntax errors or that couldn't be read are passed to problems.
+     * returns how many files were analyzed.
+     */
+    public int update(Iterable<String> inputs, ParallelAnalyzer analyzer,
+                      Consumer<ParallelAnalyzer.FileResult> problems) {
+        Set<String> listed = new HashSet<>();
+        List<String> stale = new ArrayList<>();
+        // stat'ed before the file is read, so a change made during the analysis is seen next time
+        Map<String, BasicFileAttributes> stamps = new HashMap<>();
+
+        for (String input : inputs) {
+            String path = key(input);
+            if (!listed.add(path)) continue;
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+            } catch (IOException e) {
+                attributes = null;  // the analyzer reports it
+            }
+
+            IndexedFile indexed = files.get(path);
+            if (indexed == null || attributes == null
+                    || indexed.size != attributes.size()
+                    || indexed.modified != attributes.lastModifiedTime().toMillis()) {
+                stale.add(input);
+                stamps.put(path, attributes);
+            }
+        }
+
+        files.keySet().retainAll(listed);
+
+        analyzer.analyzeAll(stale, result -> {
+            String path = key(result.getPath());
+            BasicFileAttributes attributes = stamps.get(path);
+            if (result.isFailed() || attributes == null) {
+                files.remove(path);
+                problems.accept(result);
+                return;
+            }
+
+            List<Call> calls = new ArrayList<>();
+            if (result.getResult().hasErrors() || result.getResult().isTimedOut()) {
+                problems.accept(result);
+            } else {
+                for (AnalysisTool.InvocationRecord r : result.getResult().getRecords()) {
+                    String name = r.getName();
+                    if (name != null) {
+                        calls.add(new Call(name, r.getLine(), r.getColumn()));
+                    }
+                }
+            }
+            files.put(path, new IndexedFile(attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), calls));
+        });
+
+        return stale.size();
+    }
+
+    // how inputs are named in the index
+    private static String key(String input) {
+        return AnalysisTool.resolvePath(input).toAbsolutePath().normalize().toString();
+    }
+
+    // writes the index to a temp file and moves it into place, so lookups never see half of one
+    public void write(Path file) throws IOException {
+        String[] paths = files.keySet().toArray(new String[0]);
+
+        // name -> (file, line, column) triples, already in file order since paths are sorted
+        TreeMap<String, IntList> postings = new TreeMap<>();
+        for (int f = 0; f < paths.length; f++) {
+            for (Call c : files.get(paths[f]).calls) {
+                postings.computeIfAbsent(c.name, n -> new IntList()).add(f, c.line, c.column);
+            }
+        }
+
+        ByteArrayOutputStream listBytes = new ByteArrayOutputStream();
+        DataOutputStream lists = new DataOutputStream(listBytes);
+        int[] lengths = new int[postings.size()];
+        int n = 0;
+        for (IntList list : postings.values()) {
+            int before = lists.size();
+            encodePostings(list, lists);
+            lengths[n++] = lists.size() - before;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            writeVarint(out, paths.length);
+            for (String path : paths) {
+                IndexedFile indexed = files.get(path);
+                writeUtf8(out, path);
+                writeVarlong(out, indexed.size);
+                writeVarlong(out, indexed.modified);
+            }
+
+            writeVarint(out, postings.size());
+            String previous = "";
+            n = 0;
+            for (String name : postings.keySet()) {
+                int shared = sharedPrefix(previous, name);
+                writeVarint(out, shared);
+                writeUtf8(out, name.substring(shared));
+                writeVarint(out, lengths[n++]);
+                previous = name;
+            }
+
+            listBytes.writeTo(out);
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "index", ".tmp");
+        Files.write(tmp, buffer.toByteArray());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // doesn't split a surrogate pair, so the suffix is still valid utf-16
+    private static int sharedPrefix(String a, String b) {
+        int n = 0;
+        int max = Math.min(a.length(), b.length());
+        while (n < max && a.charAt(n) == b.charAt(n)) n++;
+        if (n > 0 && Character.isHighSurrogate(a.charAt(n - 1))) n--;
+        return n;
+    }
+
+    /*
+     * every call of name in the index at file, in file, line and column order, as records
+     * whose expression is the name. reads the file table and the dictionary and decodes
+     * only name's posting list; nothing is parsed. empty if there is no index yet.
+     */
+    public static List<AnalysisTool.InvocationRecord> lookup(Path file, String name) throws IOException {
+        ByteBuffer in;
+        try {
+            in = read(file);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+
+        try {
+            Header header = Header.read(in, file);
+            int id = Arrays.binarySearch(header.names, name);
+            if (id < 0) return List.of();
+
+            in.position(header.postingsStart + header.offsets[id]);
+            List<AnalysisTool.InvocationRecord> found = new ArrayList<>();
+            decodePostings(in, (f, line, column) ->
+                    found.add(new AnalysisTool.InvocationRecord(name, name, header.paths[f], line, column)),
+                    header.paths.length);
+            return found;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is truncated or isn't an invocation index");
+        }
+    }
+
+    private static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // everything before the posting lists
+    private static class Header {
+        String[] paths;
+        long[] sizes;
+        long[] modified;
+        String[] names;
+        int[] offsets;  // of each name's posting list, from postingsStart
+        int postingsStart;
+
+        static Header read(ByteBuffer in, Path file) throws IOException {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " isn't an invocation index");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a version " + version + " index, expected " + VERSION);
+            }
+
+            Header h = new Header();
+            int fileCount = readVarint(in);
+            h.paths = new String[fileCount];
+            h.sizes = new long[fileCount];
+            h.modified = new long[fileCount];
+            for (int f = 0; f < fileCount; f++) {
+                h.paths[f] = readUtf8(in);
+                h.sizes[f] = readVarlong(in);
+                h.modified[f] = readVarlong(in);
+            }
+
+            int nameCount = readVarint(in);
+            h.names = new String[nameCount];
+            h.offsets = new int[nameCount];
+            String previous = "";
+            int offset = 0;
+            for (int n = 0; n < nameCount; n++) {
+                int shared = readVarint(in);
+                if (shared > previous.length()) throw new IOException(file + " has a bad name table");
+                previous = previous.substring(0, shared) + readUtf8(in);
+                h.names[n] = previous;
+                h.offsets[n] = offset;
+                offset += readVarint(in);
+            }
+            h.postingsStart = in.position();
+            return h;
+        }
+    }
+
+    private interface PostingSink {
+        void accept(int file, int line, int column);
+    }
+
+    private static void decodePostings(ByteBuffer in, PostingSink sink, int fileCount) throws IOException {
+        int count = readVarint(in);
+        int file = 0;
+        int line = 0;
+        for (int i = 0; i < count; i++) {
+            int fileDelta = readVarint(in);
+            file += fileDelta;
+            if (file >= fileCount) throw new IOException("posting for file " + file + " of " + fileCount);
+            line = fileDelta == 0 ? line + readVarint(in) : readVarint(in);
+            sink.accept(file, line, readVarint(in));
+        }
+    }
+
+    // the first list entry's line is a delta from 0 if its file is 0, which is the line itself
+    private static void encodePostings(IntList list, DataOutputStream out) throws IOException {
+        writeVarint(out, list.size / 3);
+        int file = 0;
+        int line = 0;
+        for (int i = 0; i < list.size; i += 3) {
+            int f = list.values[i];
+            int l = list.values[i + 1];
+            writeVarint(out, f - file);
+            writeVarint(out, f == file ? l - line : l);
+            writeVarint(out, list.values[i + 2]);
+            file = f;
+            line = l;
+        }
+    }
+
+    // (file, line, column) triples; a file's calls are added in line and column order
+    private static class IntList {
+        int[] values = new int[12];
+        int size;
+
+        void add(int file, int line, int column) {
+            if (size + 3 > values.length) values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = file;
+            values[size++] = line;
+            values[size++] = column;
+        }
+    }
+
+    private static void writeUtf8(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static String readUtf8(ByteBuffer in) throws IOException {
+        int length = readVarint(in);
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        long value = readVarlong(in);
+        if (value > Integer.MAX_VALUE) throw new IOException("varint out of range");
+        return (int) value;
+    }
+
+    private static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("varint too long");
+    }
+}
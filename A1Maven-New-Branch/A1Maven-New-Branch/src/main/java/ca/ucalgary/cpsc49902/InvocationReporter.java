@@ -0,0 +1,80 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * RecordFormat.TEXT: writes the same report as AnalysisTool.formatOutput() without
+ * holding the records.
+ *
+ * the report starts with the total count, which isn't known until the last file is
+ * done, so record lines are spooled as they arrive: in memory up to spillChars, then
+ * to a temp file. close() writes the header followed by the spooled lines. memory use
+ * is bounded by spillChars no matter how many invocations are found.
+ */
+public class InvocationReporter implements RecordWriter {
+
+    public static final int DEFAULT_SPILL_CHARS = 1 << 20;
+
+    private final Writer out;
+    private final int spillChars;
+    private final StringBuilder buffer = new StringBuilder();
+    private Path spillFile;
+    private BufferedWriter spill;
+    private long count;
+
+    public InvocationReporter(Writer out) {
+        this(out, DEFAULT_SPILL_CHARS);
+    }
+
+    InvocationReporter(Writer out, int spillChars) {
+        this.out = out;
+        this.spillChars = spillChars;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void add(AnalysisTool.InvocationRecord record) throws IOException {
+        count++;
+        buffer.append('\n').append(record);
+
+        if (buffer.length() >= spillChars) {
+            if (spill == null) {
+                spillFile = Files.createTempFile("invocations", ".txt");
+                spill = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+            }
+            spill.append(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    // writes the report and flushes out (which is left open); deletes the spill file
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(count + " method/constructor invocation(s) found in the input file(s)");
+
+            if (spill != null) {
+                spill.close();
+                try (BufferedReader in = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)) {
+                    in.transferTo(out);
+                }
+            }
+            out.append(buffer).write(System.lineSeparator());
+            out.flush();
+        } finally {
+            buffer.setLength(0);
+            if (spillFile != null) {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * JavaLexer's simulator, with two shortcuts (AnalysisTool.newLexer() installs it).
+ *
+ * fast path - the commonest tokens are scanned by hand when they start with an ascii
+ *   char: identifiers and keywords, whitespace, // and block comments, and string
+ *   literals. an identifier that runs into a char above 127 (which may or may not
+ *   continue it), an unterminated comment or string, and every other token go through
+ *   the DFA as usual. the token type, text, line and column come out exactly as the
+ *   DFA would make them; TestHarness checks that against the stock simulator.
+ *
+ * wide DFA edges - antlr only caches DFA edges for chars 0-127, so every char above
+ *   that (in a unicode identifier, string or comment) is simulated through the ATN
+ *   again each time it is seen. this caches those edges too, in a map shared by
+ *   every lexer on the same DFA.
+ */
+public class JavaLexerATNSimulator extends LexerATNSimulator {
+
+    // stop caching wide edges past this many; the DFA still works, just slower
+    private static final int MAX_WIDE_EDGES = 1 << 20;
+
+    private static final boolean[] IDENTIFIER_START = new boolean[128];
+    private static final boolean[] IDENTIFIER_PART = new boolean[128];
+    private static final boolean[] WHITESPACE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) IDENTIFIER_START[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) IDENTIFIER_START[c] = true;
+        IDENTIFIER_START['$'] = true;  // \p{Sc}
+        IDENTIFIER_START['_'] = true;  // \p{Pc}
+        System.arraycopy(IDENTIFIER_START, 0, IDENTIFIER_PART, 0, 128);
+        for (char c = '0'; c <= '9'; c++) IDENTIFIER_PART[c] = true;
+
+        for (char c : new char[] {' ', '\t', '\r', '\n', '\f'}) WHITESPACE[c] = true;
+    }
+
+    /*
+     * keywords by hash of their text. a word is a keyword only if its rule comes before
+     * Identifier, since antlr gives a tie to the first rule: 'null', 'true' and 'false'
+     * are declared after it, so they lex as identifiers.
+     */
+    private static final String[] KEYWORDS = new String[256];
+    private static final int[] KEYWORD_TYPES = new int[256];
+
+    static {
+        Vocabulary vocabulary = JavaLexer.VOCABULARY;
+        int identifierRule = Arrays.asList(JavaLexer.ruleNames).indexOf("Identifier");
+
+        for (int type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+            String literal = vocabulary.getLiteralName(type);
+            String rule = vocabulary.getSymbolicName(type);
+            if (literal == null || rule == null
+                    || Arrays.asList(JavaLexer.ruleNames).indexOf(rule) > identifierRule) {
+                continue;
+            }
+            String word = literal.substring(1, literal.length() - 1);
+            if (!word.chars().allMatch(c -> c < 128 && IDENTIFIER_PART[c])) {
+                continue;
+            }
+            int slot = word.hashCode() & (KEYWORDS.length - 1);
+            while (KEYWORDS[slot] != null) slot = (slot + 1) & (KEYWORDS.length - 1);
+            KEYWORDS[slot] = word;
+            KEYWORD_TYPES[slot] = type;
+        }
+    }
+
+    private static final Map<DFA, Map<Long, DFAState>> WIDE_EDGES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private DFA edgesDfa;
+    private Map<Long, DFAState> edges;
+
+    public JavaLexerATNSimulator(JavaLexer lexer) {
+        super(lexer, JavaLexer._ATN, JavaLexer._decisionToDFA, new PredictionContextCache());
+    }
+
+    @Override
+    public int match(CharStream input, int mode) {
+        int c = input.LA(1);
+        if (c >= 0 && c < 128) {
+            int type = scan(input, c);
+            if (type != Integer.MIN_VALUE) {
+                return type;
+            }
+        }
+        return super.match(input, mode);
+    }
+
+    // the type of the token it consumed, or MIN_VALUE (and nothing consumed) to use the DFA
+    private int scan(CharStream input, int c) {
+        if (IDENTIFIER_START[c]) {
+            return identifier(input);
+        }
+        if (WHITESPACE[c]) {
+            int n = 1;
+            while (isAscii(c = input.LA(n + 1)) && WHITESPACE[c]) n++;
+            consume(input, n);
+            recog.skip();
+            return JavaLexer.WHITESPACE;
+        }
+        if (c == '/' && input.LA(2) == '/') {
+            int n = 2;
+            while ((c = input.LA(n + 1)) != IntStream.EOF && c != '\r' && c != '\n') n++;
+            skipSameLine(input, n);
+            recog.skip();
+            return JavaLexer.LINE_COMMENT;
+        }
+        if (c == '/' && input.LA(2) == '*') {
+            int n = 2;
+            while ((c = input.LA(n + 1)) != '*' || input.LA(n + 2) != '/') {
+                if (c == IntStream.EOF) return Integer.MIN_VALUE;
+                n++;
+            }
+            consume(input, n + 2);
+            recog.skip();
+            return JavaLexer.COMMENT;
+        }
+        if (c == '"') {
+            int n = 1;
+            while ((c = input.LA(n + 1)) != '"') {
+                if (c == IntStream.EOF) return Integer.MIN_VALUE;
+                if (c == '\\') {
+                    if (input.LA(n + 2) == IntStream.EOF) return Integer.MIN_VALUE;
+                    n++;
+                }
+                n++;
+            }
+            consume(input, n + 1);
+            return JavaLexer.StringLiteral;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private int identifier(CharStream input) {
+        int hash = input.LA(1);
+        int n = 1;
+        int c;
+        while (isAscii(c = input.LA(n + 1)) && IDENTIFIER_PART[c]) {
+            hash = 31 * hash + c;
+            n++;
+        }
+        if (c > 127) {
+            return Integer.MIN_VALUE;
+        }
+
+        int type = JavaLexer.Identifier;
+        for (int slot = hash & (KEYWORDS.length - 1); KEYWORDS[slot] != null; slot = (slot + 1) & (KEYWORDS.length - 1)) {
+            if (matches(input, KEYWORDS[slot], n)) {
+                type = KEYWORD_TYPES[slot];
+                break;
+            }
+        }
+        skipSameLine(input, n);
+        return type;
+    }
+
+    private static boolean matches(CharStream input, String word, int n) {
+        if (word.length() != n) return false;
+        for (int i = 0; i < n; i++) {
+            if (input.LA(i + 1) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(int c) {
+        return c >= 0 && c < 128;
+    }
+
+    // n chars that are known not to include a '\n'
+    private void skipSameLine(CharStream input, int n) {
+        input.seek(input.index() + n);
+        charPositionInLine += n;
+    }
+
+    private void consume(CharStream input, int n) {
+        for (int i = 0; i < n; i++) consume(input);
+    }
+
+    @Override
+    protected DFAState getExistingTargetState(DFAState s, int t) {
+        if (t <= MAX_DFA_EDGE) {
+            return super.getExistingTargetState(s, t);
+        }
+        return wideEdges().get(edgeKey(s, t));
+    }
+
+    @Override
+    protected void addDFAEdge(DFAState p, int t, DFAState q) {
+        if (t <= MAX_DFA_EDGE) {
+            super.addDFAEdge(p, t, q);
+            return;
+        }
+        Map<Long, DFAState> wide = wideEdges();
+        if (wide.size() < MAX_WIDE_EDGES) {
+            wide.put(edgeKey(p, t), q);
+        }
+    }
+
+    private static Long edgeKey(DFAState s, int t) {
+        return ((long) s.stateNumber << 32) | t;
+    }
+
+    // the wide edges of the current mode's DFA; a new DFA (clearDFA()) starts with none
+    private Map<Long, DFAState> wideEdges() {
+        DFA dfa = decisionToDFA[mode];
+        if (dfa != edgesDfa) {
+            edges = WIDE_EDGES.computeIfAbsent(dfa, d -> new ConcurrentHashMap<>());
+            edgesDfa = dfa;
+        }
+        return edges;
+    }
+}
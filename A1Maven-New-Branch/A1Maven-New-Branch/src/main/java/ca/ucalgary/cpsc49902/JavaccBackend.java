@@ -0,0 +1,85 @@
+package ca.ucalgary.cpsc49902;
+
+import ca.ucalgary.cpsc49902.javacc.Java12Parser;
+import ca.ucalgary.cpsc49902.javacc.Java12ParserConstants;
+import ca.ucalgary.cpsc49902.javacc.Java12ParserTokenManager;
+import ca.ucalgary.cpsc49902.javacc.ParseException;
+import ca.ucalgary.cpsc49902.javacc.Token;
+import ca.ucalgary.cpsc49902.javacc.TokenMgrException;
+import org.antlr.v4.runtime.CharStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Java12Parser, the javacc parser generated from Java12JCC.jj.
+ *
+ * it doesn't recover: the first bad token (or char the lexer can't match) is the only
+ * syntax error reported, where antlr would go on and report the rest. the prediction
+ * mode and streaming settings don't apply; it never builds a tree.
+ *
+ * with a filter the file is run through the token manager alone first, and isn't
+ * parsed when no identifier, this or super matches (as AnalysisTool does for antlr).
+ */
+public class JavaccBackend implements ParserBackend {
+
+    @Override
+    public String getName() {
+        return "javacc";
+    }
+
+    @Override
+    public AnalysisTool.AnalysisResult analyze(CharStream input, String fileName, AnalysisConfig config) {
+        InvocationFilter filter = config.getFilter();
+        if (filter != null && !mayMatch(input, filter)) {
+            return new AnalysisTool.AnalysisResult(new ArrayList<>(), new ArrayList<>());
+        }
+
+        FileMetrics metrics = FileMetrics.current(config);
+        if (metrics != null) {
+            metrics.begin(FileMetrics.Phase.PARSE);  // the token manager lexes as the parser asks
+        }
+
+        JavaccCharStream chars = new JavaccCharStream(input);
+        Java12Parser parser = new Java12Parser(chars, fileName);
+        parser.setFilter(filter);
+
+        try {
+            parser.CompilationUnit();
+            return new AnalysisTool.AnalysisResult(parser.getRecords(), List.of());
+        } catch (ParseException e) {
+            Token bad = parser.getToken(1);
+            String message = bad.kind == Java12ParserConstants.EOF
+                    ? "unexpected end of file"
+                    : "unexpected '" + bad.image + "'";
+            return failed(parser, chars, bad.beginColumn - 1, message);
+        } catch (TokenMgrException e) {
+            return failed(parser, chars, Math.max(chars.getOffset() - 1, 0), "unexpected character");
+        }
+    }
+
+    // a char the token manager can't match is a syntax error, so that file is parsed to report it
+    private static boolean mayMatch(CharStream input, InvocationFilter filter) {
+        Java12ParserTokenManager tokens = new Java12ParserTokenManager(new JavaccCharStream(input));
+        try {
+            for (Token t = tokens.getNextToken(); t.kind != Java12ParserConstants.EOF; t = tokens.getNextToken()) {
+                if ((t.kind == Java12ParserConstants.IDENTIFIER
+                        || t.kind == Java12ParserConstants.THIS
+                        || t.kind == Java12ParserConstants.SUPER)
+                        && filter.matches(t.image)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (TokenMgrException e) {
+            return true;
+        }
+    }
+
+    private static AnalysisTool.AnalysisResult failed(Java12Parser parser, JavaccCharStream chars,
+                                                      int offset, String message) {
+        AnalysisTool.SyntaxError error = new AnalysisTool.SyntaxError(
+                chars.line(offset), chars.column(offset), message);
+        return new AnalysisTool.AnalysisResult(parser.getRecords(), List.of(error));
+    }
+}
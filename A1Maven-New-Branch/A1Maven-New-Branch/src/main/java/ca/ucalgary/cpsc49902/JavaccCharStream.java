@@ -0,0 +1,204 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * feeds an antlr CharStream to the javacc token manager (JavaccBackend).
+ *
+ * records take their text from the antlr stream by char offset, so tokens have to
+ * carry offsets rather than lines and columns: every token is on "line 1" and its
+ * begin/end columns are the offsets of its first and last char plus one. line() and
+ * column() turn an offset into the line and column antlr would have reported (lines
+ * end at '\n', a tab is one column).
+ *
+ * the whole stream is copied into a char[] up front. a code point outside the BMP is
+ * read as one letter, so offsets stay the code point offsets antlr uses. unicode
+ * escapes (\\u0061) are translated the way javac does it; when there are any, each
+ * translated char remembers the source offsets of its first and last char.
+ */
+public class JavaccCharStream implements ca.ucalgary.cpsc49902.javacc.CharStream {
+
+    // any letter; stands in for a supplementary code point
+    private static final char SUPPLEMENTARY = '\u4e00';
+
+    private final CharStream source;
+    private final char[] sourceChars;
+    private char[] chars;
+    private int length;
+    private int pos;
+    private int tokenBegin;
+    private int tabSize = 1;
+    private int[] lineStarts;
+
+    // source offsets of each char's first and last char, or null when there were no escapes
+    private int[] firstOffsets;
+    private int[] lastOffsets;
+
+    public JavaccCharStream(CharStream source) {
+        this.source = source;
+        int size = source.size();
+        String text = size == 0 ? "" : source.getText(Interval.of(0, size - 1));
+
+        if (text.length() == size) {
+            chars = text.toCharArray();
+        } else {
+            chars = new char[size];
+            int i = 0;
+            for (int c = 0; c < text.length(); ) {
+                int cp = text.codePointAt(c);
+                chars[i++] = Character.isBmpCodePoint(cp) ? (char) cp : SUPPLEMENTARY;
+                c += Character.charCount(cp);
+            }
+        }
+        sourceChars = chars;
+        length = chars.length;
+
+        if (text.indexOf("\\u") >= 0) {
+            translateEscapes();
+        }
+    }
+
+    // JLS 3.3: a backslash preceded by an even number of backslashes, one or more u's and four hex digits
+    private void translateEscapes() {
+        char[] source = chars;
+        char[] translated = new char[source.length];
+        int[] first = new int[source.length];
+        int[] last = new int[source.length];
+        int n = 0;
+        boolean escaped = false;
+
+        for (int i = 0; i < source.length; i++) {
+            char c = source[i];
+            first[n] = i;
+
+            if (c == '\\' && !escaped && i + 1 < source.length && source[i + 1] == 'u') {
+                int digits = i + 1;
+                while (digits < source.length && source[digits] == 'u') digits++;
+                int value = digits + 4 <= source.length ? hex(source, digits) : -1;
+                if (value >= 0) {
+                    translated[n] = (char) value;
+                    last[n++] = digits + 3;
+                    i = digits + 3;
+                    continue;
+                }
+            }
+
+            escaped = c == '\\' && !escaped;
+            translated[n] = c;
+            last[n++] = i;
+        }
+
+        chars = translated;
+        length = n;
+        firstOffsets = first;
+        lastOffsets = last;
+    }
+
+    private static int hex(char[] chars, int from) {
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit(chars[i], 16);
+            if (digit < 0) return -1;
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    public CharStream getSource() {
+        return source;
+    }
+
+    // source offset of the next char readChar() returns
+    public int getOffset() {
+        return pos < length ? sourceStart(pos) : sourceStop(length - 1) + 1;
+    }
+
+    private int sourceStart(int index) {
+        return firstOffsets == null ? index : firstOffsets[index];
+    }
+
+    private int sourceStop(int index) {
+        return lastOffsets == null ? index : lastOffsets[index];
+    }
+
+    // 1-based line of the char at offset
+    public int line(int offset) {
+        return lineIndex(offset) + 1;
+    }
+
+    // 1-based column of the char at offset
+    public int column(int offset) {
+        return offset - lineStarts[lineIndex(offset)] + 1;
+    }
+
+    private int lineIndex(int offset) {
+        if (lineStarts == null) {
+            lineStarts = findLineStarts(sourceChars);
+        }
+        int i = Arrays.binarySearch(lineStarts, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    // from the chars before escapes are translated, since offsets are source offsets
+    private static int[] findLineStarts(char[] chars) {
+        int lines = 1;
+        for (char c : chars) {
+            if (c == '\n') lines++;
+        }
+        int[] starts = new int[lines];
+        int line = 1;
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '\n') starts[line++] = i + 1;
+        }
+        return starts;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        if (pos >= length) {
+            throw new EOFException();
+        }
+        return chars[pos++];
+    }
+
+    @Override
+    public char beginToken() throws IOException {
+        tokenBegin = pos;
+        return readChar();
+    }
+
+    @Override
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    @Override
+    public String getImage() {
+        return new String(chars, tokenBegin, pos - tokenBegin);
+    }
+
+    @Override
+    public char[] getSuffix(int len) {
+        return Arrays.copyOfRange(chars, pos - len, pos);
+    }
+
+    @Override public int getBeginLine()   { return 1; }
+    @Override public int getEndLine()     { return 1; }
+    @Override public int getBeginColumn() { return sourceStart(tokenBegin) + 1; }
+    @Override public int getEndColumn()   { return sourceStop(pos - 1) + 1; }
+
+    @Override
+    public void done() {
+    }
+
+    @Override public int getTabSize()           { return tabSize; }
+    @Override public void setTabSize(int i)     { tabSize = i; }
+    @Override public boolean isTrackLineColumn() { return true; }
+    @Override public void setTrackLineColumn(boolean trackLineColumn) {
+    }
+}
@@ -0,0 +1,146 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/*
+ * reads RecordFormat.JSONL. each line must be a flat object; keys other than
+ * expression, file, line and column are skipped so the format can grow.
+ */
+public class JsonlRecordReader implements RecordReader {
+
+    private final BufferedReader in;
+    private int lineNumber;
+
+    // the line being parsed and the position in it
+    private String line;
+    private int pos;
+
+    public JsonlRecordReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public AnalysisTool.InvocationRecord next() throws IOException {
+        do {
+            line = in.readLine();
+            if (line == null) return null;
+            lineNumber++;
+        } while (line.isBlank());
+
+        return parse(line);
+    }
+
+    // one record from a single line of JSONL, e.g. one read off a daemon connection
+    AnalysisTool.InvocationRecord parse(String text) throws IOException {
+        line = text;
+        pos = 0;
+
+        String expression = null;
+        String file = null;
+        int recordLine = -1;
+        int column = -1;
+
+        expect('{');
+        if (peek() != '}') {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "expression" -> expression = readString();
+                    case "file"       -> file = readString();
+                    case "line"       -> recordLine = readInt();
+                    case "column"     -> column = readInt();
+                    default           -> skipValue();
+                }
+            } while (accept(','));
+        }
+        expect('}');
+        if (peek() != -1) throw error("unexpected text after the object");
+
+        if (expression == null || file == null || recordLine < 0 || column < 0) {
+            throw error("record is missing expression, file, line or column");
+        }
+        return new AnalysisTool.InvocationRecord(expression, file, recordLine, column);
+    }
+
+    private int peek() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+        return pos < line.length() ? line.charAt(pos) : -1;
+    }
+
+    private boolean accept(char c) {
+        if (peek() != c) return false;
+        pos++;
+        return true;
+    }
+
+    private void expect(char c) throws IOException {
+        if (!accept(c)) throw error("expected '" + c + "'");
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (pos < line.length()) {
+            char c = line.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= line.length()) break;
+            char e = line.charAt(pos++);
+            switch (e) {
+                case '"', '\\', '/' -> sb.append(e);
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (pos + 4 > line.length()) throw error("truncated \\u escape");
+                    try {
+                        sb.append((char) Integer.parseInt(line, pos, pos + 4, 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad \\u escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("bad escape \\" + e);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private int readInt() throws IOException {
+        peek();
+        int start = pos;
+        if (pos < line.length() && line.charAt(pos) == '-') pos++;
+        while (pos < line.length() && Character.isDigit(line.charAt(pos))) pos++;
+        try {
+            return Integer.parseInt(line, start, pos, 10);
+        } catch (NumberFormatException e) {
+            throw error("expected a number");
+        }
+    }
+
+    // any scalar; nested objects and arrays aren't part of the format
+    private void skipValue() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            readString();
+        } else {
+            while (pos < line.length() && ",}".indexOf(line.charAt(pos)) < 0) pos++;
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("line " + lineNumber + ", column " + (pos + 1) + ": " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,65 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * RecordFormat.JSONL: one object per line,
+ *   {"expression":"foo.bar(x)","file":"Foo.java","line":12,"column":8}
+ * expressions can span lines in the source, so newlines (and every other control
+ * character) are escaped.
+ */
+public class JsonlRecordWriter implements RecordWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    public JsonlRecordWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void add(AnalysisTool.InvocationRecord record) throws IOException {
+        out.write("{\"expression\":");
+        writeString(record.getExpression());
+        out.write(",\"file\":");
+        writeString(record.getFileName());
+        out.write(",\"line\":");
+        out.write(Integer.toString(record.getLine()));
+        out.write(",\"column\":");
+        out.write(Integer.toString(record.getColumn()));
+        out.write("}\n");
+    }
+
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"'  -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                case '\b' -> out.write("\\b");
+                case '\f' -> out.write("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        out.write("\\u00");
+                        out.write(HEX[c >> 4]);
+                        out.write(HEX[c & 0xF]);
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+}
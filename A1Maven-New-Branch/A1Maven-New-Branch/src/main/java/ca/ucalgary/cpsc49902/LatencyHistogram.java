@@ -0,0 +1,63 @@
+package ca.ucalgary.cpsc49902;
+
+/*
+ * counts of nanosecond latencies in log-linear buckets, the way HdrHistogram does it,
+ * so percentiles come out of a fixed-size array however many values are recorded.
+ *
+ * values below 128 each get their own bucket. above that, every power of two is split
+ * into 64 equal buckets, so a reported percentile is the top of its bucket and at most
+ * 1/64 (1.6%) above the true value. the largest value is kept exactly.
+ *
+ * not thread-safe; AnalysisStats records into it under its own lock.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+
+    // bucket LINEAR + (shift - 1) * SUB_BUCKETS + sub holds (SUB_BUCKETS + sub) << shift and up
+    private final long[] counts = new long[LINEAR + (Long.SIZE - 8) * SUB_BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[bucket(value)]++;
+        total++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() { return total; }
+    public long getSum()   { return sum; }
+    public long getMax()   { return max; }
+
+    // the smallest value that percentile percent of the values are at or below (0 when empty)
+    public long getValueAtPercentile(double percent) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return Math.min(highest(b), max);
+            }
+        }
+        return max;
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) return (int) value;
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 7;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // the largest value that falls in bucket b
+    private static long highest(int b) {
+        if (b < LINEAR) return b;
+        int shift = (b - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (b - LINEAR) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,309 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * parses one large file on several threads (--split-members).
+ *
+ * a pass over the lexed tokens matches braces to find where each member of a top-level
+ * class or interface body starts and ends. runs of members are parsed concurrently,
+ * each with classBodyDeclaration (interfaceBodyDeclaration) as the entry rule, and
+ * what's left, the package, imports and type headers with empty bodies, is parsed as
+ * a compilationUnit to check it. the tokens are the file's own, so records keep their
+ * lines and columns, and appending the runs' records in order gives the same list as
+ * walking the whole file's tree.
+ *
+ * a member ends at a ';' in the body, or at the '}' that closes its block unless it
+ * had an '=' (a field with an array initializer or an anonymous class). if that
+ * guess is ever wrong the parse of a run fails. every parse bails at its first error,
+ * and analyze() then returns null so the caller parses the whole file instead: a
+ * file with syntax errors always gets exactly the whole-file parse's errors.
+ *
+ * --time-limit and --token-limit hold for the file as a whole: every parse here, retries
+ * included, draws on the budget of the file's own stream, which has already paid for
+ * lexing.
+ */
+public class MemberSplitter {
+
+    // smaller files are parsed whole; splitting them isn't worth the extra parses
+    public static final int DEFAULT_MIN_TOKENS = 20_000;
+
+    // runs are at least this many tokens, and about two per thread
+    private static final int MIN_RUN_TOKENS = 4096;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    // made on first use; daemon threads with the same large stack as ParallelAnalyzer's workers
+    private static class Pool {
+        static final ExecutorService EXECUTOR;
+
+        static {
+            AtomicInteger count = new AtomicInteger();
+            EXECUTOR = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(null, r, "member-parser-" + count.incrementAndGet(),
+                        ParallelAnalyzer.DEFAULT_STACK_SIZE);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // consecutive members of one type body, as token indexes (to is inclusive)
+    private static class Run {
+        final int from;
+        final int to;
+        final boolean inInterface;
+
+        Run(int from, int to, boolean inInterface) {
+            this.from = from;
+            this.to = to;
+            this.inInterface = inInterface;
+        }
+    }
+
+    private final List<Token> tokens;
+    private final String fileName;
+    private final AnalysisConfig config;
+    // the file's --time-limit and --token-limit, shared by all its parses; null if unlimited
+    private final BudgetedTokenStream.Budget budget;
+
+    // everything outside the members, ending with the EOF token
+    private final List<Token> skeleton = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+
+    private MemberSplitter(List<Token> tokens, String fileName, AnalysisConfig config,
+                           BudgetedTokenStream.Budget budget) {
+        this.tokens = tokens;
+        this.fileName = fileName;
+        this.config = config;
+        this.budget = budget;
+    }
+
+    /*
+     * stream is the file's filled token stream, EOF included. returns null when the file
+     * is too small to split, can't be split, or has a syntax error. throws
+     * BudgetExceededException when the parses together go over the stream's budget.
+     */
+    static AnalysisTool.AnalysisResult analyze(CommonTokenStream stream, String fileName, AnalysisConfig config) {
+        List<Token> tokens = stream.getTokens();
+        if (tokens.size() < config.getSplitTokens()) return null;
+
+        BudgetedTokenStream.Budget budget = stream instanceof BudgetedTokenStream budgeted
+                ? budgeted.getBudget()
+                : null;
+        MemberSplitter splitter = new MemberSplitter(tokens, fileName, config, budget);
+        if (!splitter.split()) return null;
+
+        try {
+            List<AnalysisTool.InvocationRecord> records = splitter.parse();
+            return records == null ? null : new AnalysisTool.AnalysisResult(records, new ArrayList<>());
+        } finally {
+            // the run streams renumbered the tokens they read
+            for (int i = 0; i < tokens.size(); i++) {
+                ((WritableToken) tokens.get(i)).setTokenIndex(i);
+            }
+        }
+    }
+
+    // finds the members; false if the braces don't match up
+    private boolean split() {
+        int minRun = Math.max(MIN_RUN_TOKENS, tokens.size() / (THREADS * 2));
+        int depth = 0;
+        boolean inInterface = false;
+        boolean assigned = false;
+        int memberStart = -1;
+        int runStart = -1;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            int type = t.getType();
+
+            if (depth == 0) {
+                if (type == JavaLexer.CLASS) inInterface = false;
+                else if (type == JavaLexer.INTERFACE) inInterface = true;
+                else if (type == JavaLexer.CLOSE_BRACE) return false;
+                else if (type == JavaLexer.OPEN_BRACE) depth = 1;
+                skeleton.add(t);
+                continue;
+            }
+
+            if (depth == 1) {
+                if (type == JavaLexer.CLOSE_BRACE) {
+                    // the end of the type body
+                    if (memberStart >= 0) return false;
+                    if (runStart >= 0) {
+                        runs.add(new Run(runStart, i - 1, inInterface));
+                        runStart = -1;
+                    }
+                    depth = 0;
+                    skeleton.add(t);
+                    continue;
+                }
+                if (memberStart < 0) {
+                    memberStart = i;
+                    assigned = false;
+                    if (runStart < 0) runStart = i;
+                }
+            }
+
+            boolean ends = false;
+            if (type == JavaLexer.OPEN_BRACE) {
+                depth++;
+            } else if (type == JavaLexer.CLOSE_BRACE) {
+                ends = --depth == 1 && !assigned;
+            } else if (depth == 1) {
+                if (type == JavaLexer.EQUALS) assigned = true;
+                else if (type == JavaLexer.SEMICOLON) ends = true;
+                else if (type == Token.EOF) return false;
+            }
+
+            if (ends) {
+                memberStart = -1;
+                if (i + 1 - runStart >= minRun) {
+                    runs.add(new Run(runStart, i, inInterface));
+                    runStart = -1;
+                }
+            }
+        }
+        return depth == 0 && !runs.isEmpty();
+    }
+
+    // runs the first run on this thread and the rest on the pool; null on a syntax error
+    private List<AnalysisTool.InvocationRecord> parse() {
+        List<Future<List<AnalysisTool.InvocationRecord>>> futures = new ArrayList<>();
+        for (int r = 1; r < runs.size(); r++) {
+            Run run = runs.get(r);
+            futures.add(Pool.EXECUTOR.submit(() -> parseRun(run)));
+        }
+
+        List<AnalysisTool.InvocationRecord> records = null;
+        Throwable failure = null;
+        try {
+            records = parseRun(runs.get(0));
+            if (records != null && !parseSkeleton()) records = null;
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+
+        // every run is waited for, so none is still reading the tokens when this returns
+        for (Future<List<AnalysisTool.InvocationRecord>> future : futures) {
+            if (records == null || failure != null) future.cancel(false);
+            try {
+                List<AnalysisTool.InvocationRecord> more = future.get();
+                if (more == null) records = null;
+                else if (records != null) records.addAll(more);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+            } catch (CancellationException e) {
+                // only after records were already given up on
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = e;
+            }
+        }
+
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof Error e) throw e;
+        if (failure != null) throw new IllegalStateException(failure);
+        return records;
+    }
+
+    private List<AnalysisTool.InvocationRecord> parseRun(Run run) {
+        List<Token> members = tokens.subList(run.from, run.to + 1);
+        for (PredictionMode mode : modes()) {
+            JavaParser parser = parser(members, mode);
+            try {
+                return config.isStreaming()
+                        ? stream(parser, run.inInterface)
+                        : walk(parser, run.inInterface);
+            } catch (ParseCancellationException e) {
+                // SLL gave up, or there is a syntax error; LL (if any) decides which
+            } finally {
+                profile(parser);
+            }
+        }
+        return null;
+    }
+
+    private List<AnalysisTool.InvocationRecord> walk(JavaParser parser, boolean inInterface) {
+        AnalysisTool.InvocationListener listener = new AnalysisTool.InvocationListener(fileName, config.getFilter());
+        CompositeAnalysis analyses = new CompositeAnalysis().add(listener, AnalysisTool.InvocationListener.RULES);
+        while (parser.getInputStream().LA(1) != Token.EOF) {
+            ParseTree member = inInterface ? parser.interfaceBodyDeclaration() : parser.classBodyDeclaration();
+            analyses.walk(member);
+        }
+        return listener.getRecords();
+    }
+
+    private List<AnalysisTool.InvocationRecord> stream(JavaParser parser, boolean inInterface) {
+        StreamingInvocationListener listener = new StreamingInvocationListener(fileName, config.getFilter());
+        parser.setBuildParseTree(false);
+        parser.addParseListener(listener);
+        while (parser.getInputStream().LA(1) != Token.EOF) {
+            if (inInterface) parser.interfaceBodyDeclaration();
+            else parser.classBodyDeclaration();
+        }
+        return listener.getRecords();
+    }
+
+    private boolean parseSkeleton() {
+        for (PredictionMode mode : modes()) {
+            JavaParser parser = parser(skeleton, mode);
+            try {
+                parser.compilationUnit();
+                return true;
+            } catch (ParseCancellationException e) {
+                // as in parseRun()
+            } finally {
+                profile(parser);
+            }
+        }
+        return false;
+    }
+
+    // the predictions the configured parse mode would try, in order
+    private PredictionMode[] modes() {
+        return switch (config.getParseMode()) {
+            case TWO_STAGE -> new PredictionMode[] { PredictionMode.SLL, PredictionMode.LL };
+            case SLL -> new PredictionMode[] { PredictionMode.SLL };
+            case LL -> new PredictionMode[] { PredictionMode.LL };
+        };
+    }
+
+    private JavaParser parser(List<Token> part, PredictionMode mode) {
+        ListTokenSource source = new ListTokenSource(part);
+        CommonTokenStream stream = budget != null
+                ? new BudgetedTokenStream(source, budget)
+                : new CommonTokenStream(source);
+        JavaParser parser = new JavaParser(stream);
+        parser.removeErrorListeners();
+        if (config.getGrammarProfile() != null) {
+            parser.setProfile(true);
+        }
+        parser.getInterpreter().setPredictionMode(mode);
+        parser.setErrorHandler(new BailErrorStrategy());
+        return parser;
+    }
+
+    private void profile(JavaParser parser) {
+        if (config.getGrammarProfile() != null) {
+            config.getGrammarProfile().add(parser.getParseInfo().getDecisionInfo());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+ * runs AnalysisTool.analyzeFile() for many files on a worker pool.
+ *
+ * a task takes its lexer, parser and listeners from its worker thread's
+ * AnalysisContext, which that thread reuses for file after file and never lends to
+ * another thread. what the threads do share is JavaParser's DFA and prediction
+ * context caches, which antlr makes safe to share. results are handed back in the
+ * same order as the input paths no matter which worker finishes first, and at most
+ * `window` files are in flight at once.
+ *
+ * JavaParser is recursive (a few frames per level of nesting in the source), so the
+ * platform worker threads are made with a large stack, stackSize bytes (--stack-size).
+ * it is only reserved address space until a deep file actually uses it. virtual
+ * threads can't be given a stack size. a file that still overflows the stack comes
+ * back as a timed out result rather than failing the whole run, and a file whose
+ * analysis throws comes back failed, like one that can't be read.
+ */
+public class ParallelAnalyzer implements AutoCloseable {
+
+    public static final long DEFAULT_STACK_SIZE = 512L * 1024 * 1024;
+
+    private static final Comparator<AnalysisTool.InvocationRecord> BY_POSITION =
+            Comparator.comparingInt(AnalysisTool.InvocationRecord::getLine)
+                    .thenComparingInt(AnalysisTool.InvocationRecord::getColumn);
+
+    // how a single file gets analyzed; called concurrently from the worker threads
+    public interface FileAnalyzer {
+        AnalysisTool.AnalysisResult analyze(String path) throws IOException;
+    }
+
+    public static class FileResult {
+        private final String path;
+        private final AnalysisTool.AnalysisResult result;
+        private final Exception failure;
+        private final long nanos;
+
+        FileResult(String path, AnalysisTool.AnalysisResult result, Exception failure, long nanos) {
+            this.path    = path;
+            this.result  = result;
+            this.failure = failure;
+            this.nanos   = nanos;
+        }
+
+        public String getPath()                      { return path; }
+        public AnalysisTool.AnalysisResult getResult() { return result; }   // null when the file couldn't be read
+        public Exception getFailure()                { return failure; }   // null on success; an IOException if unreadable
+        public long getNanos()                       { return nanos; }
+        public boolean isFailed()                    { return failure != null; }
+    }
+
+    private final ExecutorService executor;
+    private final int window;
+    private final FileAnalyzer fileAnalyzer;
+
+    public ParallelAnalyzer(int threads, boolean virtualThreads) {
+        this(threads, virtualThreads, AnalysisTool::analyzeFile);
+    }
+
+    public ParallelAnalyzer(int threads, boolean virtualThreads, FileAnalyzer fileAnalyzer) {
+        this(threads, virtualThreads, DEFAULT_STACK_SIZE, fileAnalyzer);
+    }
+
+    public ParallelAnalyzer(int threads, boolean virtualThreads, long stackSize, FileAnalyzer fileAnalyzer) {
+        this(virtualThreads
+                        ? Executors.newVirtualThreadPerTaskExecutor()
+                        : Executors.newFixedThreadPool(threads, workers(stackSize)),
+                virtualThreads ? threads : threads * 2,
+                fileAnalyzer);
+    }
+
+    private static ThreadFactory workers(long stackSize) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> new Thread(null, r, "analyzer-" + count.incrementAndGet(), stackSize);
+    }
+
+    public ParallelAnalyzer(ExecutorService executor, int window, FileAnalyzer fileAnalyzer) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1, got " + window);
+        }
+        this.executor = executor;
+        this.window = window;
+        this.fileAnalyzer = fileAnalyzer;
+    }
+
+    /*
+     * analyzes every path and passes each FileResult to sink in input order.
+     * sink is only ever called from the calling thread.
+     */
+    public void analyzeAll(Iterable<String> paths, Consumer<FileResult> sink) {
+        Deque<Future<FileResult>> inFlight = new ArrayDeque<>();
+
+        for (String path : paths) {
+            if (inFlight.size() >= window) {
+                sink.accept(await(inFlight.removeFirst()));
+            }
+            inFlight.addLast(executor.submit(() -> analyzeOne(path)));
+        }
+
+        while (!inFlight.isEmpty()) {
+            sink.accept(await(inFlight.removeFirst()));
+        }
+    }
+
+    public List<FileResult> analyzeAll(List<String> paths) {
+        List<FileResult> results = new ArrayList<>(paths.size());
+        analyzeAll(paths, results::add);
+        return results;
+    }
+
+    private FileResult analyzeOne(String path) {
+        long start = System.nanoTime();
+        try {
+            AnalysisTool.AnalysisResult result = fileAnalyzer.analyze(path);
+
+            List<AnalysisTool.InvocationRecord> sorted = new ArrayList<>(result.getRecords());
+            sorted.sort(BY_POSITION);
+
+            return new FileResult(path,
+                    new AnalysisTool.AnalysisResult(sorted, result.getErrors(), result.getTimedOut()),
+                    null,
+                    System.nanoTime() - start);
+
+        } catch (IOException e) {
+            return new FileResult(path, null, e, System.nanoTime() - start);
+        } catch (UncheckedIOException e) {
+            return new FileResult(path, null, e.getCause(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            // a bug tripped by one file shouldn't lose the results of all the others
+            return new FileResult(path, null, e, System.nanoTime() - start);
+        } catch (StackOverflowError e) {
+            return new FileResult(path,
+                    new AnalysisTool.AnalysisResult(List.of(), List.of(),
+                            "nested too deeply for the worker thread's stack (see --stack-size)"),
+                    null,
+                    System.nanoTime() - start);
+        }
+    }
+
+    private static FileResult await(Future<FileResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for analysis", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("analysis task failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
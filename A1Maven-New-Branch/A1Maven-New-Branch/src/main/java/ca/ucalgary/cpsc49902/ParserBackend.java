@@ -0,0 +1,31 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+
+/*
+ * a parser that turns one file's source into its syntax errors and invocations
+ * (--backend).
+ *   ANTLR  - JavaParser.g4 (AntlrBackend); the default, and the one the fixtures were written against
+ *   JAVACC - Java12JCC.jj (JavaccBackend); the same language as an LL(k) parser with no
+ *            parse tree, which stops at the first syntax error
+ * both report the same invocations for a file that parses.
+ */
+public interface ParserBackend {
+
+    ParserBackend ANTLR = new AntlrBackend();
+    ParserBackend JAVACC = new JavaccBackend();
+
+    static ParserBackend fromOption(String value) {
+        return switch (value) {
+            case "antlr"  -> ANTLR;
+            case "javacc" -> JAVACC;
+            default -> throw new IllegalArgumentException(
+                    "--backend expects antlr or javacc, got " + value);
+        };
+    }
+
+    // the --backend value; also part of ResultCache's key
+    String getName();
+
+    AnalysisTool.AnalysisResult analyze(CharStream input, String fileName, AnalysisConfig config);
+}
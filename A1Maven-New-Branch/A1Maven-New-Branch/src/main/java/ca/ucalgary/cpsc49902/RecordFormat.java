@@ -0,0 +1,52 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * output layouts for AnalysisTool (--format).
+ *   TEXT   - the human readable report, header line first (InvocationReporter)
+ *   JSONL  - one JSON object per record: expression, file, line, column
+ *   BINARY - length-prefixed records with a string table for file names and
+ *            repeated expressions (BinaryRecordWriter)
+ * every format has a streaming reader, so consumers don't need to parse the text.
+ */
+public enum RecordFormat {
+    TEXT, JSONL, BINARY;
+
+    public static RecordFormat fromOption(String value) {
+        return switch (value) {
+            case "text"   -> TEXT;
+            case "jsonl"  -> JSONL;
+            case "binary" -> BINARY;
+            default -> throw new IllegalArgumentException(
+                    "--format expects text, jsonl or binary, got " + value);
+        };
+    }
+
+    // charset is only used by TEXT; JSONL is always UTF-8
+    public RecordWriter openWriter(OutputStream out, Charset charset) {
+        return switch (this) {
+            case TEXT -> new InvocationReporter(new BufferedWriter(new OutputStreamWriter(out, charset)));
+            case JSONL -> new JsonlRecordWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            case BINARY -> new BinaryRecordWriter(out);
+        };
+    }
+
+    public RecordReader openReader(InputStream in, Charset charset) {
+        return switch (this) {
+            case TEXT -> new TextRecordReader(new BufferedReader(new InputStreamReader(in, charset)));
+            case JSONL -> new JsonlRecordReader(
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            case BINARY -> new BinaryRecordReader(new BufferedInputStream(in));
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * reads back what a RecordWriter wrote, one record at a time, so a consumer never
+ * needs to hold more than the record it is looking at.
+ */
+public interface RecordReader extends Closeable {
+
+    // the next record, or null at the end of the input
+    AnalysisTool.InvocationRecord next() throws IOException;
+}
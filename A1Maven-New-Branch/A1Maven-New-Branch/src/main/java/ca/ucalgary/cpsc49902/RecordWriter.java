@@ -0,0 +1,20 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * writes invocation records in one of the RecordFormat layouts.
+ * close() finishes the output and flushes it but leaves the underlying stream open.
+ */
+public interface RecordWriter extends Closeable {
+
+    void add(AnalysisTool.InvocationRecord record) throws IOException;
+
+    default void addAll(List<AnalysisTool.InvocationRecord> records) throws IOException {
+        for (AnalysisTool.InvocationRecord r : records) {
+            add(r);
+        }
+    }
+}
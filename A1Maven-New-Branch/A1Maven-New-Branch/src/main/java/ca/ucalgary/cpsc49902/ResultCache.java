@@ -0,0 +1,326 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+ * on-disk cache of per-file analysis results.
+ *
+ * an entry is keyed by the SHA-256 of the file's bytes, the parser backend's name, the
+ * prediction mode (--prediction: an sll parse can report errors a two-stage one
+ * doesn't), whether the listener streams (--streaming), the error cap (--max-errors),
+ * the invocation filter (--method, --regex) if there is one and a stamp of the build of the tool itself (its class files or jar, see
+ * codeFingerprint()). that covers the generated lexers and parsers as well as the
+ * listeners and the lexer simulator, so a build that could extract different records
+ * starts from an empty cache without anyone having to bump a version. entries don't
+ * store the file name; it is filled back in from the path on a hit, so identical
+ * files share one entry. a file that timed out isn't stored.
+ *
+ * the cache directory is kept under maxBytes by deleting the least recently used
+ * entries (hits bump the entry's modification time).
+ */
+public class ResultCache {
+
+    public static final Path DEFAULT_DIR = Path.of(".analysis-cache");
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x4A494331;  // "JIC1"
+    private static final String SUFFIX = ".bin";
+
+    private static final byte[] CODE_FINGERPRINT = codeFingerprint();
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResultCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (entry.toString().endsWith(SUFFIX)) {
+                    size.addAndGet(Files.size(entry));
+                }
+            }
+        }
+    }
+
+    public long getHits()   { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    /*
+     * returns the cached result for the file or analyzes it and stores the result.
+     * the file is read once either way: the bytes that were hashed are the bytes parsed,
+     * and a large file is hashed and lexed straight from its mapping (SourceLoader).
+     */
+    public AnalysisTool.AnalysisResult analyze(String filePath, AnalysisConfig config) throws IOException {
+        Path path = AnalysisTool.resolvePath(filePath);
+        String fileName = path.getFileName().toString();
+
+        // the read covers hashing and looking the entry up too
+        try (FileMetrics metrics = FileMetrics.start(path.toString(), config)) {
+            if (metrics != null) metrics.begin(FileMetrics.Phase.READ);
+            ByteBuffer source = SourceLoader.read(path, config.isMemoryMapped());
+            Path entry = dir.resolve(key(source, config) + SUFFIX);
+
+            AnalysisTool.AnalysisResult cached = load(entry, fileName);
+            if (metrics != null) {
+                metrics.end();
+                metrics.setBytes(source.limit());
+            }
+            if (cached != null) {
+                hits.incrementAndGet();
+                if (metrics != null) {
+                    metrics.setCached();
+                    metrics.setResult(cached);
+                }
+                return cached;
+            }
+
+            misses.incrementAndGet();
+            AnalysisTool.AnalysisResult result = AnalysisTool.analyzeSource(
+                    SourceLoader.load(source, path.toString()),
+                    fileName,
+                    config);
+            if (metrics != null) metrics.setResult(result);
+
+            // a timeout depends on the limits and the machine's load, not just the file
+            if (!result.isTimedOut()) {
+                store(entry, result);
+            }
+            return result;
+        }
+    }
+
+    private static String key(ByteBuffer source, AnalysisConfig config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(CODE_FINGERPRINT);
+            digest.update((config.getBackend().getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update((config.getParseMode() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update((config.isStreaming() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update((config.getMaxErrors() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (config.getFilter() != null) {
+                digest.update((config.getFilter() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(source.duplicate());  // leaves source's position alone
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // the entry layout version and a stamp of the build this class was loaded from: the
+    // name, size and modification time of every class in its package directory, or of
+    // its jar. a rebuild misses even if nothing changed, which is only slower. (hashing
+    // the class bytes instead took ~300 ms at startup.) code that can't be found gets a
+    // random fingerprint, which only ever misses
+    static byte[] codeFingerprint() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(("v" + FORMAT_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+
+        try {
+            CodeSource source = ResultCache.class.getProtectionDomain().getCodeSource();
+            if (source == null || source.getLocation() == null) {
+                throw new IOException("no code source");
+            }
+            Path code = Path.of(source.getLocation().toURI());
+
+            List<Path> stamped = new ArrayList<>();
+            if (Files.isDirectory(code)) {
+                Path classes = code.resolve(ResultCache.class.getPackageName().replace('.', '/'));
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(classes, "*.class")) {
+                    for (Path c : files) {
+                        stamped.add(c);
+                    }
+                }
+                stamped.sort(null);  // listing order depends on the file system
+            } else {
+                stamped.add(code);   // the jar
+            }
+
+            for (Path p : stamped) {
+                BasicFileAttributes attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                digest.update((p.getFileName() + " " + attributes.size() + " "
+                        + attributes.lastModifiedTime().toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e) {
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            digest.update(random);
+        }
+        return digest.digest();
+    }
+
+    private static AnalysisTool.AnalysisResult load(Path entry, String fileName) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC) return null;
+
+            int recordCount = readCount(in);
+            List<AnalysisTool.InvocationRecord> records = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                String expression = readString(in);
+                String name = readString(in);
+                int line = in.readInt();
+                int column = in.readInt();
+                records.add(new AnalysisTool.InvocationRecord(expression, name.isEmpty() ? null : name,
+                        fileName, line, column));
+            }
+
+            int errorCount = readCount(in);
+            List<AnalysisTool.SyntaxError> errors = new ArrayList<>(errorCount);
+            for (int i = 0; i < errorCount; i++) {
+                int line = in.readInt();
+                int column = in.readInt();
+                errors.add(new AnalysisTool.SyntaxError(line, column, readString(in)));
+            }
+
+            return new AnalysisTool.AnalysisResult(records, errors);
+
+        } catch (IOException e) {
+            // truncated or garbled entry: drop it and reparse
+            Files.deleteIfExists(entry);
+            return null;
+        }
+    }
+
+    private void store(Path entry, AnalysisTool.AnalysisResult result) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+
+            out.writeInt(result.getRecords().size());
+            for (AnalysisTool.InvocationRecord r : result.getRecords()) {
+                writeString(out, r.getExpression());
+                writeString(out, r.getName() == null ? "" : r.getName());  // no name is ""
+                out.writeInt(r.getLine());
+                out.writeInt(r.getColumn());
+            }
+
+            out.writeInt(result.getErrors().size());
+            for (AnalysisTool.SyntaxError e : result.getErrors()) {
+                out.writeInt(e.getLine());
+                out.writeInt(e.getColumn());
+                writeString(out, e.getMessage());
+            }
+        }
+
+        // write to a temp file and move it into place so readers never see half an entry
+        Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+        Files.write(tmp, buffer.toByteArray());
+        Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (size.addAndGet(buffer.size()) > maxBytes) {
+            evict();
+        }
+    }
+
+    // deletes least recently used entries until the cache is back under 90% of maxBytes
+    private synchronized void evict() throws IOException {
+        if (size.get() <= maxBytes) return;
+
+        List<Path> entries;
+        try (Stream<Path> listing = Files.list(dir)) {
+            entries = listing.filter(p -> p.toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(ResultCache::lastModified))
+                    .toList();
+        }
+
+        long total = 0;
+        for (Path p : entries) {
+            total += sizeOf(p);
+        }
+
+        long target = maxBytes / 10 * 9;
+        for (Path p : entries) {
+            if (total <= target) break;
+            long bytes = sizeOf(p);
+            if (Files.deleteIfExists(p)) {
+                total -= bytes;
+            }
+        }
+
+        size.set(total);
+    }
+
+    private static FileTime lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("bad entry count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
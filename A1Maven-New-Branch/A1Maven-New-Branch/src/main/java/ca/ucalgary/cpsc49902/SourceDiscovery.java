@@ -0,0 +1,226 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * expands the command line inputs into the source files to analyze.
+ *
+ * an input can be
+ *   - a file, which is passed through as is (missing files too, so the analyzer
+ *     reports them like it always has)
+ *   - a directory, which is searched recursively for *.java files
+ *   - a glob such as src/main/**.java, which is searched from the part before the
+ *     first wildcard and matched against paths relative to that directory
+ * --include / --exclude globs are then applied to everything found in a directory
+ * (not to files named directly). they match either the path relative to the searched
+ * directory or the bare file name, so "Test*.java" works at any depth; an excluded
+ * directory isn't searched at all.
+ *
+ * directories are listed in parallel: listing a directory immediately submits the
+ * listing of each of its subdirectories, so the whole tree fans out over the pool.
+ * iterator() hands back paths in a fixed order (inputs in command line order, each
+ * directory sorted by name, depth first) as soon as the listings they depend on are
+ * done, so analysis can start on the first file while the rest of the tree is still
+ * being searched. symbolic links to directories aren't followed.
+ */
+public class SourceDiscovery implements Iterable<String>, AutoCloseable {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    private final List<String> inputs;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final ExecutorService executor;
+
+    public SourceDiscovery(List<String> inputs, List<String> includes, List<String> excludes) {
+        this(inputs, includes, excludes, DEFAULT_THREADS);
+    }
+
+    public SourceDiscovery(List<String> inputs, List<String> includes, List<String> excludes, int threads) {
+        this.inputs = inputs;
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "source-discovery");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        return matchers;
+    }
+
+    private static boolean isGlob(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if ("*?[{".indexOf(s.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyMatch(List<PathMatcher> matchers, Path relative) {
+        Path name = relative.getFileName();
+        for (PathMatcher m : matchers) {
+            if (m.matches(relative) || (name != null && m.matches(name))) return true;
+        }
+        return false;
+    }
+
+    // what one search is looking for: the directory it started from and the files it wants
+    private class Search {
+        final Path root;
+        final PathMatcher pattern;  // null means *.java
+
+        Search(Path root, PathMatcher pattern) {
+            this.root = root;
+            this.pattern = pattern;
+        }
+
+        boolean wants(Path file) {
+            Path relative = root.relativize(file);
+            boolean selected = pattern != null
+                    ? pattern.matches(relative)
+                    : file.getFileName().toString().endsWith(".java");
+
+            return selected
+                    && (includes.isEmpty() || anyMatch(includes, relative))
+                    && !anyMatch(excludes, relative);
+        }
+
+        boolean skips(Path dir) {
+            return !dir.equals(root) && anyMatch(excludes, root.relativize(dir));
+        }
+
+        // a directory's entries in name order: a String for each wanted file and a
+        // Future for each subdirectory, whose listing has already been started
+        Future<List<Object>> list(Path dir) {
+            return executor.submit(() -> {
+                List<Path> children = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    stream.forEach(children::add);
+                } catch (IOException | DirectoryIteratorException e) {
+                    // hand the directory itself to the analyzer, which reports it as unreadable
+                    return List.of(dir.toString());
+                }
+                children.sort(null);
+
+                List<Object> entries = new ArrayList<>(children.size());
+                for (Path child : children) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!skips(child)) entries.add(list(child));
+                    } else if (wants(child)) {
+                        entries.add(child.toString());
+                    }
+                }
+                return entries;
+            });
+        }
+    }
+
+    // splits a glob into the directory to search from and a matcher for the rest.
+    // done on the string, since wildcards aren't legal in a Path on every platform
+    private Search globSearch(String input) {
+        int wildcard = 0;
+        while ("*?[{".indexOf(input.charAt(wildcard)) < 0) wildcard++;
+
+        int split = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf('\\', wildcard));
+        Path root;
+        if (split < 0) {
+            root = Path.of(".");
+        } else if (split == 0) {
+            root = Path.of(input.substring(0, 1));  // a wildcard right under the root directory
+        } else {
+            root = Path.of(input.substring(0, split));
+        }
+        String rest = input.substring(split + 1);
+
+        return new Search(root, FileSystems.getDefault().getPathMatcher("glob:" + rest));
+    }
+
+    /*
+     * the walk over a stack of pending entries: Strings are ready to hand out, Futures
+     * are directory listings that replace themselves with their entries when reached.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        Deque<Object> pending = new ArrayDeque<>();
+
+        // start every input's search right away; they are still handed out in order
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                Search search = globSearch(input);
+                pending.addLast(search.list(search.root));
+            } else if (Files.isDirectory(Path.of(input))) {
+                Path root = Path.of(input);
+                pending.addLast(new Search(root, null).list(root));
+            } else {
+                pending.addLast(input);
+            }
+        }
+
+        return new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !pending.isEmpty()) {
+                    Object entry = pending.removeFirst();
+                    if (entry instanceof String path) {
+                        next = path;
+                    } else {
+                        List<?> entries = await(entry);
+                        for (int i = entries.size() - 1; i >= 0; i--) {
+                            pending.addFirst(entries.get(i));
+                        }
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                String path = next;
+                next = null;
+                return path;
+            }
+        };
+    }
+
+    private static List<?> await(Object listing) {
+        try {
+            return (List<?>) ((Future<?>) listing).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while searching for source files", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("searching for source files failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
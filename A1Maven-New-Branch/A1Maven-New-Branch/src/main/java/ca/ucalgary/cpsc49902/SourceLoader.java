@@ -0,0 +1,95 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * turns a source file into the CharStream the lexer reads.
+ *
+ * files of at least MAP_THRESHOLD bytes are memory-mapped; if the mapping is pure
+ * ASCII the lexer reads it in place through AsciiCharStream. everything else (small
+ * files, or files with any non-ASCII byte such as real Unicode identifiers) goes
+ * through CharStreams, which decodes UTF-8 exactly the way fromPath() always has.
+ *
+ * ResultCache needs the bytes themselves to hash them, so it read()s the file (the
+ * same mapping, or the bytes of a small file) and makes the stream from that.
+ */
+public final class SourceLoader {
+
+    // below this, a plain read is cheaper than setting up a mapping
+    public static final long MAP_THRESHOLD = 64 * 1024;
+
+    private SourceLoader() {
+    }
+
+    public static CharStream load(Path path, boolean allowMapping) throws IOException {
+        MappedByteBuffer mapped = allowMapping ? map(path) : null;
+        return mapped != null ? load(mapped, path.toString()) : CharStreams.fromPath(path);
+    }
+
+    // the file's bytes: mapped like load() would, or read onto the heap if it is small
+    public static ByteBuffer read(Path path, boolean allowMapping) throws IOException {
+        MappedByteBuffer mapped = allowMapping ? map(path) : null;
+        return mapped != null ? mapped : ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+
+    // the stream for bytes from read(); ascii ones are read in place
+    public static CharStream load(ByteBuffer source, String sourceName) throws IOException {
+        if (AsciiCharStream.isAscii(source)) {
+            return new AsciiCharStream(source, sourceName);
+        }
+
+        // decode from the buffer rather than reading the file a second time
+        return CharStreams.fromChannel(
+                Channels.newChannel(new ByteBufferInputStream(source)),
+                StandardCharsets.UTF_8,
+                4096,
+                CodingErrorAction.REPLACE,
+                sourceName,
+                source.limit());
+    }
+
+    // null when the file is too small to be worth mapping, or too large to map at once
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package ca.ucalgary.cpsc49902;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * parse listener version of AnalysisTool.InvocationListener.
+ *
+ * it is attached with parser.addParseListener() to a parser that has
+ * setBuildParseTree(false), so rule contexts are never linked into a tree and each
+ * one becomes garbage as soon as its rule exits. only the terminals of the rule
+ * currently being parsed are attached, which is all the text reconstruction needs.
+ *
+ * records come out of exitPrimarySuffix / exitConstructorInvocation /
+ * exitExplicitConstructorInvocation, i.e. in post-order. every node gets a sequence
+ * number when it is entered (pre-order, same as ParseTreeWalker) and getRecords()
+ * sorts by it, so the result is identical to walking the tree with InvocationListener.
+ */
+public class StreamingInvocationListener extends JavaParserBaseListener {
+
+    // a primary whose suffixes are still being parsed
+    private static class OpenPrimary {
+        final long seq;
+        Token prefixStart;
+        Token last;
+        int lastStop;
+        int suffixIndex;
+
+        // set by exitMethodCall etc., consumed by the surrounding exitPrimarySuffix
+        Token location;
+        Token name;
+        int suffixStop = -1;
+
+        OpenPrimary(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    private static class Pending {
+        final long seq;
+        final int suffixIndex;
+        final AnalysisTool.InvocationRecord record;
+
+        Pending(long seq, int suffixIndex, AnalysisTool.InvocationRecord record) {
+            this.seq = seq;
+            this.suffixIndex = suffixIndex;
+            this.record = record;
+        }
+    }
+
+    private static final Comparator<Pending> TREE_ORDER =
+            Comparator.comparingLong((Pending p) -> p.seq).thenComparingInt(p -> p.suffixIndex);
+
+    // a constructor invocation whose arguments are still being parsed
+    private static class OpenConstructor {
+        final long seq;
+        Token name;
+
+        OpenConstructor(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    private String fileName;
+    private InvocationFilter filter;
+    private final Deque<OpenPrimary> primaries = new ArrayDeque<>();
+    private final Deque<OpenConstructor> constructors = new ArrayDeque<>();
+    private final List<Pending> pending = new ArrayList<>();
+    private long nextSeq;
+
+    public StreamingInvocationListener(String fileName) {
+        this(fileName, null);
+    }
+
+    // only records the invocations filter matches (all of them when it is null)
+    public StreamingInvocationListener(String fileName, InvocationFilter filter) {
+        this.fileName = fileName;
+        this.filter = filter;
+    }
+
+    // throws away everything seen so far; used when a bailed SLL parse is retried with LL
+    public void reset() {
+        primaries.clear();
+        constructors.clear();
+        pending.clear();
+        nextSeq = 0;
+    }
+
+    // reset() for another file, so one listener can be reused (AnalysisContext)
+    public void reset(String fileName, InvocationFilter filter) {
+        reset();
+        this.fileName = fileName;
+        this.filter = filter;
+    }
+
+    public List<AnalysisTool.InvocationRecord> getRecords() {
+        pending.sort(TREE_ORDER);
+        List<AnalysisTool.InvocationRecord> records = new ArrayList<>(pending.size());
+        for (Pending p : pending) {
+            records.add(p.record);
+        }
+        return records;
+    }
+
+    private void add(long seq, int suffixIndex, AnalysisTool.InvocationRecord record) {
+        pending.add(new Pending(seq, suffixIndex, record));
+    }
+
+    @Override
+    public void enterPrimary(JavaParser.PrimaryContext ctx) {
+        primaries.push(new OpenPrimary(nextSeq++));
+    }
+
+    @Override
+    public void exitPrimary(JavaParser.PrimaryContext ctx) {
+        primaries.pop();
+    }
+
+    @Override
+    public void exitPrimaryPrefix(JavaParser.PrimaryPrefixContext ctx) {
+        OpenPrimary primary = primaries.peek();
+        primary.prefixStart = ctx.getStart();
+        primary.last = ctx.getStop();
+        primary.lastStop = primary.last.getStopIndex();
+    }
+
+    @Override
+    public void exitMethodCall(JavaParser.MethodCallContext ctx) {
+        if (!wanted(ctx.Identifier())) return;
+        suffixFound(ctx.PERIOD().getSymbol(), ctx.Identifier().getSymbol(), ctx.getStop().getStopIndex());
+    }
+
+    @Override
+    public void exitUnqualifiedCall(JavaParser.UnqualifiedCallContext ctx) {
+        OpenPrimary primary = primaries.peek();
+        // the name is whatever came before the '(', e.g. the identifier of foo(x)
+        if (filter != null && !filter.matches(primary.last)) return;
+        suffixFound(primary.prefixStart, primary.last, ctx.getStop().getStopIndex());
+    }
+
+    @Override
+    public void exitSuperMethodCall(JavaParser.SuperMethodCallContext ctx) {
+        if (!wanted(ctx.Identifier())) return;
+        suffixFound(ctx.getStart(), symbol(ctx.Identifier()), ctx.getStop().getStopIndex());
+    }
+
+    @Override
+    public void exitQualifiedNew(JavaParser.QualifiedNewContext ctx) {
+        if (ctx.CLOSE_PARENTHESIS() == null) return;  // ')' was missing and error recovery made one up
+        if (!wanted(ctx.Identifier())) return;
+
+        // an anonymous class body after the arguments isn't part of the expression
+        suffixFound(ctx.getStart(), symbol(ctx.Identifier()), ctx.CLOSE_PARENTHESIS().getSymbol().getStopIndex());
+    }
+
+    // the filter is checked on the name token alone, before any text is taken
+    private boolean wanted(TerminalNode name) {
+        return filter == null || (name != null && filter.matches(name.getSymbol()));
+    }
+
+    private static Token symbol(TerminalNode node) {
+        return node == null ? null : node.getSymbol();
+    }
+
+    private void suffixFound(Token location, Token name, int stop) {
+        OpenPrimary primary = primaries.peek();
+        primary.location = location;
+        primary.name = name;
+        primary.suffixStop = stop;
+    }
+
+    @Override
+    public void exitPrimarySuffix(JavaParser.PrimarySuffixContext ctx) {
+        OpenPrimary primary = primaries.peek();
+
+        if (primary.location != null) {
+            add(primary.seq, primary.suffixIndex, new AnalysisTool.InvocationRecord(
+                    primary.prefixStart.getInputStream(),
+                    primary.prefixStart.getStartIndex(),
+                    primary.lastStop,
+                    ctx.getStart().getStartIndex(),
+                    primary.suffixStop,
+                    InvocationFilter.nameOf(primary.name),
+                    fileName,
+                    primary.location.getLine(),
+                    primary.location.getCharPositionInLine() + 1));
+
+            primary.location = null;
+            primary.name = null;
+            primary.suffixStop = -1;
+        }
+
+        primary.last = ctx.getStop();
+        primary.lastStop = primary.last.getStopIndex();
+        primary.suffixIndex++;
+    }
+
+    @Override
+    public void enterConstructorInvocation(JavaParser.ConstructorInvocationContext ctx) {
+        constructors.push(new OpenConstructor(nextSeq++));
+    }
+
+    // rule children aren't kept without a tree, so the class name is caught on its way past
+    @Override
+    public void exitQualifiedIdentifier(JavaParser.QualifiedIdentifierContext ctx) {
+        if (ctx.getParent() instanceof JavaParser.ConstructorInvocationContext) {
+            constructors.peek().name = ctx.getStop();
+        }
+    }
+
+    @Override
+    public void exitConstructorInvocation(JavaParser.ConstructorInvocationContext ctx) {
+        OpenConstructor constructor = constructors.pop();
+        if (ctx.CLOSE_PARENTHESIS() == null) return;
+        if (filter != null && !filter.matches(constructor.name)) return;
+
+        Token close = ctx.CLOSE_PARENTHESIS().getSymbol();
+        // anything after ')' is an anonymous class body, and those aren't reported
+        if (ctx.getStop().getTokenIndex() > close.getTokenIndex()) return;
+
+        add(constructor.seq, 0, record(ctx.getStart(), close, constructor.name));
+    }
+
+    @Override
+    public void enterExplicitConstructorInvocation(
+            JavaParser.ExplicitConstructorInvocationContext ctx) {
+        constructors.push(new OpenConstructor(nextSeq++));
+    }
+
+    @Override
+    public void exitExplicitConstructorInvocation(
+            JavaParser.ExplicitConstructorInvocationContext ctx) {
+        OpenConstructor constructor = constructors.pop();
+        if (ctx.CLOSE_PARENTHESIS() == null) return;
+        TerminalNode name = ctx.THIS() != null ? ctx.THIS() : ctx.SUPER();
+        if (!wanted(name)) return;
+
+        add(constructor.seq, 0, record(ctx.getStart(), ctx.CLOSE_PARENTHESIS().getSymbol(), symbol(name)));
+    }
+
+    // the text from start to stop, reported at start
+    private AnalysisTool.InvocationRecord record(Token start, Token stop, Token name) {
+        return new AnalysisTool.InvocationRecord(
+                start.getInputStream(),
+                start.getStartIndex(),
+                stop.getStopIndex(),
+                InvocationFilter.nameOf(name),
+                fileName,
+                start.getLine(),
+                start.getCharPositionInLine() + 1);
+    }
+}
@@ -0,0 +1,64 @@
+package ca.ucalgary.cpsc49902;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * reads RecordFormat.TEXT back into records. the header line is skipped.
+ *
+ * the text format was made for people: an expression that spans lines in the source
+ * spans lines in the report too, and nothing is escaped. a record therefore ends at
+ * the first line that ends in ": file F, line L, column C". prefer JSONL or BINARY
+ * for anything that isn't already text.
+ */
+public class TextRecordReader implements RecordReader {
+
+    private static final Pattern HEADER =
+            Pattern.compile("\\d+ method/constructor invocation\\(s\\) found in the input file\\(s\\)");
+    private static final Pattern TAIL =
+            Pattern.compile("(?s)(.*): file (.*), line (\\d+), column (\\d+)");
+
+    private final BufferedReader in;
+    private boolean started;
+
+    public TextRecordReader(BufferedReader in) {
+        this.in = in;
+    }
+
+    @Override
+    public AnalysisTool.InvocationRecord next() throws IOException {
+        String line = in.readLine();
+        if (!started) {
+            started = true;
+            if (line != null && HEADER.matcher(line).matches()) {
+                line = in.readLine();
+            }
+        }
+        if (line == null || line.isEmpty()) return null;
+
+        StringBuilder text = new StringBuilder(line);
+        while (true) {
+            Matcher m = TAIL.matcher(text);
+            if (m.matches()) {
+                return new AnalysisTool.InvocationRecord(
+                        m.group(1),
+                        m.group(2),
+                        Integer.parseInt(m.group(3)),
+                        Integer.parseInt(m.group(4)));
+            }
+
+            line = in.readLine();
+            if (line == null) {
+                throw new IOException("record isn't followed by its location: " + text);
+            }
+            text.append('\n').append(line);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
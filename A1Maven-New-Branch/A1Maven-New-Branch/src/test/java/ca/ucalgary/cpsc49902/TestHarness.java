@@ -1,5 +1,13 @@
 package ca.ucalgary.cpsc49902;
 
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -311,6 +319,44 @@ class TestHarness {
                 "getSyntaxErrors() should be empty for a file with no syntax errors");
     }
 
+    @Test
+    void missing_close_paren_in_a_constructor_call_is_reported_not_thrown(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws IOException {
+        // error recovery leaves the calls without their ')'
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("NewCall.java", "class NewCall {\n    void m() {\n        Object o = new Object(;\n    }\n}\n");
+        sources.put("QualifiedNew.java", "class QualifiedNew {\n    void m() {\n        Object o = a.new Inner(;\n    }\n}\n");
+        sources.put("ThisCall.java", "class ThisCall {\n    ThisCall() {\n        this(1;\n    }\n}\n");
+
+        List<String> files = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            java.nio.file.Path file = dir.resolve(source.getKey());
+            java.nio.file.Files.writeString(file, source.getValue());
+            String path = file.toString();
+            files.add(path);
+
+            List<AnalysisTool.SyntaxError> errors = AnalysisTool.getSyntaxErrors(path);
+            assertFalse(errors.isEmpty(), source.getKey());
+            assertEquals(3, errors.get(0).getLine(), source.getKey());
+            assertEquals(errors.size(), AnalysisTool.countErrors(path), source.getKey());
+        }
+
+        // the other files of a parallel run are still analyzed
+        String clean = path("src", "main", "java", "Test", "Scope.java");
+        files.add(clean);
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false)) {
+            List<ParallelAnalyzer.FileResult> results = analyzer.analyzeAll(files);
+            for (int i = 0; i < sources.size(); i++) {
+                assertFalse(results.get(i).isFailed(), results.get(i).getPath());
+                assertTrue(results.get(i).getResult().hasErrors(), results.get(i).getPath());
+            }
+            ParallelAnalyzer.FileResult last = results.get(sources.size());
+            assertFalse(last.isFailed() || last.getResult().hasErrors());
+            assertEquals(AnalysisTool.analyzeFile(clean).getRecords().toString(),
+                    last.getResult().getRecords().toString());
+        }
+    }
+
     @Test
     void invocation_variants_test() throws IOException {
         String file = path("src", "main", "java", "Test", "InvocationVariants.java");
@@ -337,4 +383,1034 @@ class TestHarness {
 
         assertInvocations(file, expected);
     }
+
+    @Test
+    void parallel_analysis_keeps_input_order_and_survives_missing_files() throws IOException {
+        List<String> files = List.of(
+                path("src", "main", "java", "Test", "RecordFields.java"),
+                path("src", "main", "java", "Test", "does-not-exist.java"),
+                path("src", "main", "java", "Test", "InvocationVariants.java"),
+                path("src", "main", "java", "Test", "Scope.java"));
+
+        List<ParallelAnalyzer.FileResult> results;
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(4, false)) {
+            results = analyzer.analyzeAll(files);
+        }
+
+        assertEquals(files, results.stream().map(ParallelAnalyzer.FileResult::getPath).toList(),
+                "results should come back in input order");
+
+        assertTrue(results.get(1).isFailed(), "missing file should be reported as a failure");
+        assertNull(results.get(1).getResult());
+
+        for (int i : new int[] {0, 2, 3}) {
+            List<AnalysisTool.InvocationRecord> records = results.get(i).getResult().getRecords();
+            assertEquals(AnalysisTool.analyze(files.get(i)).size(), records.size(),
+                    "parallel and sequential analysis disagree for " + files.get(i));
+
+            for (int r = 1; r < records.size(); r++) {
+                AnalysisTool.InvocationRecord prev = records.get(r - 1);
+                AnalysisTool.InvocationRecord cur  = records.get(r);
+                assertTrue(prev.getLine() < cur.getLine() ||
+                                (prev.getLine() == cur.getLine() && prev.getColumn() <= cur.getColumn()),
+                        "records should be sorted by line then column: " + prev + " before " + cur);
+            }
+        }
+
+        // a file whose analysis throws is reported as failed and the rest carry on
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false, path -> {
+            if (path.contains("InvocationVariants")) throw new IllegalStateException("broken listener");
+            return AnalysisTool.analyzeFile(path);
+        })) {
+            results = analyzer.analyzeAll(files);
+        }
+        assertTrue(results.get(2).isFailed());
+        assertInstanceOf(IllegalStateException.class, results.get(2).getFailure());
+        assertNull(results.get(2).getResult());
+        assertTrue(results.get(1).isFailed());
+        assertEquals(AnalysisTool.analyze(files.get(3)).size(), results.get(3).getResult().getRecords().size());
+    }
+
+    private List<String> allFixtures() throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String dir : List.of("Test", "Tests")) {
+            try (var listing = java.nio.file.Files.list(Paths.get(path("src", "main", "java", dir)))) {
+                listing.map(Object::toString)
+                        .filter(p -> p.endsWith(".java"))
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    @Test
+    void two_stage_prediction_matches_full_ll_on_every_fixture() throws IOException {
+        for (String file : allFixtures()) {
+            AnalysisTool.AnalysisResult ll = AnalysisTool.analyzeFile(file,
+                    new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.LL));
+            AnalysisTool.AnalysisResult twoStage = AnalysisTool.analyzeFile(file,
+                    new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.TWO_STAGE));
+
+            assertEquals(ll.getErrors().toString(), twoStage.getErrors().toString(),
+                    "two-stage parse reported different syntax errors for " + file);
+            assertEquals(ll.getRecords().toString(), twoStage.getRecords().toString(),
+                    "two-stage parse found different invocations for " + file);
+        }
+    }
+
+    @Test
+    void streaming_extraction_matches_tree_walk_on_every_fixture() throws IOException {
+        for (String file : allFixtures()) {
+            for (AnalysisTool.ParseMode mode : AnalysisTool.ParseMode.values()) {
+                AnalysisTool.AnalysisResult tree = AnalysisTool.analyzeFile(file,
+                        new AnalysisConfig().setParseMode(mode));
+                AnalysisTool.AnalysisResult streamed = AnalysisTool.analyzeFile(file,
+                        new AnalysisConfig().setParseMode(mode).setStreaming(true));
+
+                assertEquals(tree.getRecords().toString(), streamed.getRecords().toString(),
+                        "streaming found different invocations for " + file + " (" + mode + ")");
+                assertEquals(tree.getErrors().toString(), streamed.getErrors().toString(),
+                        "streaming reported different syntax errors for " + file + " (" + mode + ")");
+            }
+        }
+    }
+
+    @Test
+    void javacc_backend_matches_antlr_on_every_fixture() throws IOException {
+        // the javacc lexer reads hex, L/f suffixes, exponents and unicode escapes, which JavaLexer doesn't
+        Set<String> lexerDifferences = Set.of(
+                "HexTest.java", "Literals.java", "ArrayInitTest.java", "UnicodeIdentifierTest.java");
+
+        int compared = 0;
+        for (String file : allFixtures()) {
+            AnalysisTool.AnalysisResult antlr = AnalysisTool.analyzeFile(file, new AnalysisConfig());
+            AnalysisTool.AnalysisResult javacc = AnalysisTool.analyzeFile(file,
+                    new AnalysisConfig().setBackend(ParserBackend.JAVACC));
+
+            if (lexerDifferences.contains(Paths.get(file).getFileName().toString())) {
+                assertFalse(javacc.hasErrors(), "javacc reported " + javacc.getErrors() + " for " + file);
+            } else if (antlr.hasErrors()) {
+                // javacc stops at the first error, so only check that there is one
+                assertTrue(javacc.hasErrors(), "javacc found no syntax error in " + file);
+            } else {
+                assertEquals(antlr.getRecords().toString(), javacc.getRecords().toString(),
+                        "javacc found different invocations for " + file);
+                assertFalse(javacc.hasErrors(), "javacc reported " + javacc.getErrors() + " for " + file);
+                compared++;
+            }
+        }
+        assertTrue(compared >= 10, "only " + compared + " fixtures parsed cleanly");
+
+        // the first error is reported where antlr reports its first one
+        AnalysisTool.AnalysisResult bad = AnalysisTool.analyzeFile(
+                path("src", "main", "java", "Tests", "BadGenerics.java"),
+                new AnalysisConfig().setBackend(ParserBackend.JAVACC));
+        assertEquals("line 8, column 15: unexpected '<'", bad.getErrors().get(0).toString());
+    }
+
+    @Test
+    void expressions_are_shallow_and_keep_their_precedence() {
+        JavaParser parser = new JavaParser(new CommonTokenStream(new JavaLexer(
+                CharStreams.fromString("class C { void m() { x = a + b * c - d; f(a); } }"))));
+        JavaParser.CompilationUnitContext tree = parser.compilationUnit();
+        assertEquals(0, parser.getNumberOfSyntaxErrors());
+
+        List<JavaParser.StatementExpressionContext> statements = new ArrayList<>();
+        List<JavaParser.ArgumentListContext> arguments = new ArrayList<>();
+        ParseTreeWalker.DEFAULT.walk(new JavaParserBaseListener() {
+            @Override
+            public void enterStatementExpression(JavaParser.StatementExpressionContext ctx) {
+                statements.add(ctx);
+            }
+
+            @Override
+            public void enterArgumentList(JavaParser.ArgumentListContext ctx) {
+                arguments.add(ctx);
+            }
+        }, tree);
+
+        // x = ((a + (b * c)) - d)
+        JavaParser.ExpressionContext sum = statements.get(0).expression();
+        assertEquals("-", sum.getChild(1).getText());
+        assertEquals("a+b*c", sum.expression(0).getText());
+        assertEquals("b*c", sum.expression(0).expression(1).getText());
+
+        // an argument's primary is one rule below the argument list
+        JavaParser.ExpressionContext argument = arguments.get(0).expression(0);
+        assertNotNull(argument.primary());
+        assertEquals("a", argument.primary().getText());
+    }
+
+    @Test
+    void grammar_profile_sums_decisions_over_every_parse() throws IOException {
+        GrammarProfile profile = new GrammarProfile();
+        AnalysisConfig config = new AnalysisConfig()
+                .setParseMode(AnalysisTool.ParseMode.LL)
+                .setGrammarProfile(profile);
+
+        List<String> files = allFixtures();
+        for (String file : files) {
+            AnalysisTool.AnalysisResult profiled = AnalysisTool.analyzeFile(file, config);
+            AnalysisTool.AnalysisResult plain = AnalysisTool.analyzeFile(file,
+                    new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.LL));
+            assertEquals(plain.getRecords().toString(), profiled.getRecords().toString(),
+                    "profiling changed the invocations found in " + file);
+        }
+
+        assertEquals(files.size(), profile.getFiles());
+        GrammarProfile.Decision[] decisions = profile.getDecisions();
+        assertTrue(decisions.length > 0, "no decision was profiled");
+        for (int i = 1; i < decisions.length; i++) {
+            assertTrue(decisions[i - 1].getNanos() >= decisions[i].getNanos(), "decisions aren't sorted by time");
+        }
+
+        Set<String> rules = Arrays.stream(decisions).map(GrammarProfile.Decision::getRule).collect(Collectors.toSet());
+        assertTrue(rules.containsAll(List.of("blockStatement", "statementExpression", "primaryPrefix")),
+                "missing hot rules in " + rules);
+        assertTrue(Arrays.stream(decisions).mapToLong(GrammarProfile.Decision::getErrors).sum() > 0,
+                "the fixtures with syntax errors should show up as prediction errors");
+    }
+
+    @Test
+    void result_cache_hits_on_rerun_and_stays_under_its_size_limit(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path cacheDir) throws IOException {
+
+        List<String> files = allFixtures();
+        ResultCache cache = new ResultCache(cacheDir, 1024 * 1024);
+
+        for (String file : files) {
+            cache.analyze(file, new AnalysisConfig());
+        }
+        assertEquals(0, cache.getHits(), "cold cache shouldn't have any hits");
+
+        for (String file : files) {
+            AnalysisTool.AnalysisResult cached = cache.analyze(file, new AnalysisConfig());
+            AnalysisTool.AnalysisResult fresh  = AnalysisTool.analyzeFile(file);
+
+            assertEquals(fresh.getRecords().toString(), cached.getRecords().toString(),
+                    "cached invocations differ for " + file);
+            assertEquals(fresh.getErrors().toString(), cached.getErrors().toString(),
+                    "cached syntax errors differ for " + file);
+            assertEquals(names(fresh), names(cached), "cached names differ for " + file);
+        }
+        assertEquals(files.size(), cache.getHits(), "every file should hit on the second run");
+
+        // the key includes a stamp of this build; a random one (code not found) would never hit
+        assertArrayEquals(ResultCache.codeFingerprint(), ResultCache.codeFingerprint());
+
+        // another prediction mode or listener doesn't get this one's entries
+        ResultCache modes = new ResultCache(cacheDir.resolve("modes"), 1024 * 1024);
+        String first = files.get(0);
+        AnalysisConfig sll = new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.SLL);
+        modes.analyze(first, sll);
+        modes.analyze(first, new AnalysisConfig());
+        modes.analyze(first, new AnalysisConfig().setStreaming(true));
+        assertEquals(0, modes.getHits());
+        modes.analyze(first, sll);
+        assertEquals(1, modes.getHits());
+
+        // a tiny limit forces eviction on every store
+        java.nio.file.Path smallDir = cacheDir.resolve("small");
+        ResultCache small = new ResultCache(smallDir, 2048);
+        for (String file : files) {
+            small.analyze(file, new AnalysisConfig());
+        }
+        long total = 0;
+        try (var entries = java.nio.file.Files.list(smallDir)) {
+            for (java.nio.file.Path p : (Iterable<java.nio.file.Path>) entries::iterator) {
+                total += java.nio.file.Files.size(p);
+            }
+        }
+        assertTrue(total <= 2048, "cache grew past its limit: " + total + " bytes");
+    }
+
+    private static List<String> names(AnalysisTool.AnalysisResult result) {
+        return result.getRecords().stream().map(AnalysisTool.InvocationRecord::getName).toList();
+    }
+
+    /*
+     * the name of the call an expression ends with, worked out from its text alone: the
+     * Identifier, this or super before the '(' that matches its last ')'. null if there
+     * isn't one. what the records' getName() is checked against.
+     */
+    private static String nameOf(String expression) {
+        List<? extends Token> tokens = AnalysisTool.newLexer(CharStreams.fromString(expression))
+                .getAllTokens().stream()
+                .filter(t -> t.getChannel() == Token.DEFAULT_CHANNEL)
+                .toList();
+
+        int depth = 0;
+        for (int i = tokens.size() - 1; i > 0; i--) {
+            int type = tokens.get(i).getType();
+            if (type == JavaLexer.CLOSE_PARENTHESIS) {
+                depth++;
+            } else if (type == JavaLexer.OPEN_PARENTHESIS && --depth == 0) {
+                return InvocationFilter.nameOf(tokens.get(i - 1));
+            } else if (depth == 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> tokens(CharStream input) {
+        JavaLexer lexer = new JavaLexer(input);
+        lexer.removeErrorListeners();
+        return tokens(lexer);
+    }
+
+    private static List<String> tokens(JavaLexer lexer) {
+        return lexer.getAllTokens().stream()
+                .map(t -> t.getType() + ":" + t.getText() + "@" + t.getLine() + ":" + t.getCharPositionInLine()
+                        + "[" + t.getStartIndex() + "," + t.getStopIndex() + "]")
+                .toList();
+    }
+
+    @Test
+    void memory_mapped_source_lexes_and_analyzes_like_from_path(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws IOException {
+
+        StringBuilder ascii = new StringBuilder("class Big {\n");
+        StringBuilder unicode = new StringBuilder("class BigUnicode {\n");
+        for (int i = 0; ascii.length() < 2 * SourceLoader.MAP_THRESHOLD; i++) {
+            ascii.append("    void m").append(i).append("() { System.out.println(\"line ").append(i)
+                    .append("\"); new Object().toString(); }\n");
+            unicode.append("    void m").append(i).append("() { int π").append(i)
+                    .append(" = 3; helperé(π").append(i).append("); }\n");
+        }
+        ascii.append("}\n");
+        unicode.append("    void helperé(int x) { }\n}\n");
+
+        for (String source : List.of(ascii.toString(), unicode.toString())) {
+            java.nio.file.Path file = dir.resolve("Big" + source.length() + ".java");
+            java.nio.file.Files.writeString(file, source);
+
+            CharStream mapped = SourceLoader.load(file, true);
+            CharStream plain  = CharStreams.fromPath(file);
+
+            assertEquals(plain.size(), mapped.size(), "stream sizes differ for " + file);
+            assertEquals(tokens(plain), tokens(SourceLoader.load(file, true)),
+                    "mapped and fromPath streams lex differently for " + file);
+
+            AnalysisTool.AnalysisResult viaMapping = AnalysisTool.analyzeFile(file, new AnalysisConfig());
+            AnalysisTool.AnalysisResult viaFromPath = AnalysisTool.analyzeFile(file,
+                    new AnalysisConfig().setMemoryMapped(false));
+            assertEquals(viaFromPath.getRecords().toString(), viaMapping.getRecords().toString());
+            assertEquals(viaFromPath.getErrors().toString(), viaMapping.getErrors().toString());
+
+            // the result cache hashes and parses the same mapping
+            assertInstanceOf(java.nio.MappedByteBuffer.class, SourceLoader.read(file, true));
+            ResultCache cache = new ResultCache(dir.resolve("cache"), 1024 * 1024);
+            for (int run = 0; run < 2; run++) {
+                AnalysisTool.AnalysisResult viaCache = cache.analyze(file.toString(), new AnalysisConfig());
+                assertEquals(viaFromPath.getRecords().toString(), viaCache.getRecords().toString());
+                assertEquals(viaFromPath.getErrors().toString(), viaCache.getErrors().toString());
+            }
+            assertEquals(1, cache.getHits());
+        }
+
+        assertInstanceOf(AsciiCharStream.class,
+                SourceLoader.load(dir.resolve("Big" + ascii.length() + ".java"), true),
+                "a large ascii file should be read in place");
+    }
+
+    @Test
+    void fast_path_lexer_matches_the_stock_lexer() throws IOException {
+        List<String> sources = new ArrayList<>();
+        for (String file : allFixtures()) {
+            sources.add(java.nio.file.Files.readString(Paths.get(file)));
+        }
+        sources.add("class K { Object a = null, b = true; int $x_1 = instanceofx + classy; }");
+        sources.add("int größe = π + xé; String s = \"grüße \\\" \\\\ 𝔘\"; // überall 𝔘\r\n/* ǅ\n*/ a𝔘b");
+        sources.add("a /* never closed");
+        sources.add("s = \"never closed");
+        sources.add("s = \"ends in a backslash\\");
+        sources.add("x = a/b//c\n/*/ y */ z /**/ w\t\f\r\n  \\u0061 \\ ;");
+        sources.add("");
+
+        // every pair of ascii chars, and each one followed by a non-ascii letter
+        StringBuilder pairs = new StringBuilder();
+        for (char c = 0; c < 128; c++) {
+            for (char d = 0; d < 128; d++) {
+                pairs.append(c).append(d).append(' ');
+            }
+            pairs.append(c).append('é').append(' ');
+        }
+        sources.add(pairs.toString());
+
+        for (String source : sources) {
+            assertEquals(tokens(CharStreams.fromString(source)),
+                    tokens(AnalysisTool.newLexer(CharStreams.fromString(source))),
+                    "fast path lexed differently: " + source.substring(0, Math.min(60, source.length())));
+        }
+    }
+
+    @Test
+    void method_filter_keeps_only_matching_calls_and_skips_files_without_them() throws IOException {
+        String source = "class Calls extends Base {\n"
+                + "    Calls() { this(1); }\n"
+                + "    Calls(int x) { super(); }\n"
+                + "    void m() {\n"
+                + "        println(\"a\");\n"
+                + "        System.out.println(foo(1).println());\n"
+                + "        super.println(2);\n"
+                + "        new Printer(println(3));\n"
+                + "        outer.new println(4);\n"
+                + "        new java.io.Printer(5) { };\n"
+                + "    }\n"
+                + "}\n";
+
+        Map<InvocationFilter, List<String>> expected = new LinkedHashMap<>();
+        expected.put(new InvocationFilter(List.of("println"), null), List.of(
+                "println(\"a\")",
+                "System.out.println(foo(1).println())",
+                "foo(1).println()",
+                "super.println(2)",
+                "println(3)",
+                "outer.new println(4)"));
+        expected.put(new InvocationFilter(List.of("Printer", "foo"), null), List.of(
+                "foo(1)",
+                "new Printer(println(3))"));
+        expected.put(new InvocationFilter(List.of(), java.util.regex.Pattern.compile("^(this|super)$")), List.of(
+                "this(1)",
+                "super()"));
+
+        List<AnalysisConfig> configs = List.of(
+                new AnalysisConfig(),
+                new AnalysisConfig().setStreaming(true),
+                new AnalysisConfig().setBackend(ParserBackend.JAVACC));
+
+        for (Map.Entry<InvocationFilter, List<String>> e : expected.entrySet()) {
+            for (AnalysisConfig config : configs) {
+                config.setFilter(e.getKey());
+                List<String> found = AnalysisTool.analyzeSource(
+                                CharStreams.fromString(source), "Calls.java", config)
+                        .getRecords().stream()
+                        .map(AnalysisTool.InvocationRecord::getExpression)
+                        .toList();
+                assertEquals(e.getValue(), found,
+                        e.getKey() + ", " + config.getBackend().getName() + ", streaming=" + config.isStreaming());
+            }
+        }
+
+        // no token names a wanted call, so the file isn't parsed and its error goes unreported
+        String broken = "class Broken { void m() { foo( } }";
+        for (AnalysisConfig config : configs) {
+            AnalysisTool.AnalysisResult skipped = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(broken), "Broken.java",
+                    config.setFilter(new InvocationFilter(List.of("println"), null)));
+            assertTrue(skipped.getRecords().isEmpty() && !skipped.hasErrors(), config.getBackend().getName());
+
+            AnalysisTool.AnalysisResult parsed = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(broken), "Broken.java",
+                    config.setFilter(new InvocationFilter(List.of("foo"), null)));
+            assertTrue(parsed.hasErrors(), config.getBackend().getName());
+        }
+
+        // on every fixture a filtered run finds a subset of the unfiltered records
+        InvocationFilter println = new InvocationFilter(List.of("println"), null);
+        for (String file : allFixtures()) {
+            List<String> all = AnalysisTool.analyzeFile(file).getRecords().stream()
+                    .map(AnalysisTool.InvocationRecord::toString)
+                    .toList();
+            List<String> filtered = AnalysisTool.analyzeFile(file, new AnalysisConfig().setFilter(println))
+                    .getRecords().stream()
+                    .map(AnalysisTool.InvocationRecord::toString)
+                    .toList();
+            assertTrue(all.containsAll(filtered), file);
+        }
+    }
+
+    @Test
+    void invocation_index_answers_lookups_and_only_reanalyzes_changed_files(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws IOException {
+
+        // every engine names a call by the token before its arguments, as the index does
+        String calls = "class N extends M { N() { super(1); } "
+                + "void m() { foo(1).bar(x, \")\" /* ) */); new a.Foo(); o.new Inner(); super.sm(); } }";
+        for (AnalysisConfig config : List.of(new AnalysisConfig(), new AnalysisConfig().setStreaming(true),
+                new AnalysisConfig().setBackend(ParserBackend.JAVACC))) {
+            AnalysisTool.AnalysisResult result = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(calls), "N.java", config);
+            assertEquals(List.of("super", "foo", "bar", "Foo", "Inner", "sm"), names(result),
+                    config.getBackend().getName() + (config.isStreaming() ? " streaming" : ""));
+        }
+        assertNull(nameOf("(a)(b)"));
+
+        List<String> inputs = new ArrayList<>();
+        for (String fixture : allFixtures()) {
+            // fixtures in different directories can share a name
+            java.nio.file.Path copy = dir.resolve(String.valueOf(inputs.size())).resolve(Paths.get(fixture).getFileName());
+            java.nio.file.Files.createDirectories(copy.getParent());
+            java.nio.file.Files.copy(Paths.get(fixture), copy);
+            inputs.add(copy.toString());
+        }
+        java.nio.file.Path indexFile = dir.resolve("calls.idx");
+
+        // expected: every call of every file without syntax errors, by name
+        Map<String, Set<String>> expected = new TreeMap<>();
+        for (String input : inputs) {
+            AnalysisTool.AnalysisResult result = AnalysisTool.analyzeFile(input);
+            if (result.hasErrors()) continue;
+            for (AnalysisTool.InvocationRecord r : result.getRecords()) {
+                String name = nameOf(r.getExpression());
+                assertEquals(name, r.getName(), r.toString());
+                if (name == null) continue;
+                expected.computeIfAbsent(name, n -> new TreeSet<>())
+                        .add(input + ":" + r.getLine() + ":" + r.getColumn());
+            }
+        }
+        assertFalse(expected.isEmpty());
+
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false)) {
+            InvocationIndex index = InvocationIndex.load(indexFile);
+            assertEquals(inputs.size(), index.update(inputs, analyzer, f -> { }));
+            index.write(indexFile);
+
+            for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+                Set<String> found = new TreeSet<>();
+                for (AnalysisTool.InvocationRecord r : InvocationIndex.lookup(indexFile, e.getKey())) {
+                    assertEquals(e.getKey(), r.getExpression());
+                    found.add(r.getFileName() + ":" + r.getLine() + ":" + r.getColumn());
+                }
+                assertEquals(e.getValue(), found, "lookup of " + e.getKey());
+            }
+            assertTrue(InvocationIndex.lookup(indexFile, "noSuchMethodAnywhere").isEmpty());
+
+            // nothing changed: nothing is analyzed again
+            index = InvocationIndex.load(indexFile);
+            assertEquals(0, index.update(inputs, analyzer, f -> { }));
+
+            // one file edited, one no longer listed
+            java.nio.file.Path edited = Paths.get(inputs.get(0));
+            java.nio.file.Files.writeString(edited, "class Edited { void m() { freshCall(1); } }");
+            java.nio.file.Files.setLastModifiedTime(edited,
+                    java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            List<String> fewer = inputs.subList(0, inputs.size() - 1);
+
+            assertEquals(1, index.update(fewer, analyzer, f -> { }));
+            index.write(indexFile);
+            assertEquals(fewer.size(), InvocationIndex.load(indexFile).getFileCount());
+            assertEquals(List.of(edited.toString() + ":1:27"),
+                    InvocationIndex.lookup(indexFile, "freshCall").stream()
+                            .map(r -> r.getFileName() + ":" + r.getLine() + ":" + r.getColumn())
+                            .toList());
+            String dropped = Paths.get(inputs.get(inputs.size() - 1)).toString();
+            for (String name : expected.keySet()) {
+                for (AnalysisTool.InvocationRecord r : InvocationIndex.lookup(indexFile, name)) {
+                    assertNotEquals(dropped, r.getFileName());
+                    assertNotEquals(edited.toString(), r.getFileName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void parse_budgets_time_out_runaway_files_and_cap_their_errors() throws IOException {
+        StringBuilder big = new StringBuilder("class Big {\n");
+        StringBuilder broken = new StringBuilder("class Broken {\n    void m() {\n");
+        for (int i = 0; i < 3_000; i++) {
+            big.append("    int f").append(i).append("() { return g(").append(i).append(") + h.k(x, y); }\n");
+            broken.append("        a = (b + ; c.d(;\n");
+        }
+        big.append("}\n");
+        broken.append("    }\n}\n");
+
+        for (boolean streaming : List.of(false, true)) {
+            AnalysisConfig tokens = new AnalysisConfig().setStreaming(streaming).setTokenLimit(1000);
+            AnalysisTool.AnalysisResult overTokens = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(big.toString()), "Big.java", tokens);
+            assertTrue(overTokens.isTimedOut(), "token limit, streaming=" + streaming);
+            assertTrue(overTokens.getRecords().isEmpty() && !overTokens.hasErrors());
+            assertTrue(overTokens.getTimedOut().contains("1000 tokens"), overTokens.getTimedOut());
+
+            AnalysisConfig time = new AnalysisConfig().setStreaming(streaming).setTimeLimit(1);
+            AnalysisTool.AnalysisResult overTime = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(big.toString()), "Big.java", time);
+            assertTrue(overTime.isTimedOut(), "time limit, streaming=" + streaming);
+            assertTrue(overTime.getTimedOut().contains("1 ms"), overTime.getTimedOut());
+
+            // generous limits change nothing
+            AnalysisConfig roomy = new AnalysisConfig().setStreaming(streaming)
+                    .setTokenLimit(Long.MAX_VALUE / 2).setTimeLimit(600_000);
+            assertEquals(
+                    AnalysisTool.analyzeSource(CharStreams.fromString(big.toString()), "Big.java",
+                            new AnalysisConfig().setStreaming(streaming)).getRecords().toString(),
+                    AnalysisTool.analyzeSource(CharStreams.fromString(big.toString()), "Big.java",
+                            roomy).getRecords().toString());
+
+            AnalysisTool.AnalysisResult capped = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(broken.toString()), "Broken.java",
+                    new AnalysisConfig().setStreaming(streaming).setMaxErrors(50));
+            assertFalse(capped.isTimedOut());
+            assertEquals(51, capped.getErrors().size(), "error cap, streaming=" + streaming);
+            assertTrue(capped.getErrors().get(50).getMessage().startsWith("more than 50 syntax errors"));
+        }
+
+        // a split file's runs draw on one budget. the parser reads about 1.5 tokens per
+        // token here, lookahead included, so the whole file goes over a limit of its token
+        // count while each run (at most about half the file) is under it
+        CommonTokenStream lexed = new CommonTokenStream(AnalysisTool.newLexer(CharStreams.fromString(big.toString())));
+        lexed.fill();
+        int bigTokens = lexed.size();
+        for (boolean streaming : List.of(false, true)) {
+            AnalysisTool.AnalysisResult splitOver = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(big.toString()), "Big.java",
+                    new AnalysisConfig().setStreaming(streaming).setSplitTokens(1).setTokenLimit(bigTokens));
+            assertTrue(splitOver.isTimedOut(), "split token limit, streaming=" + streaming);
+
+            AnalysisTool.AnalysisResult splitRoomy = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(big.toString()), "Big.java",
+                    new AnalysisConfig().setStreaming(streaming).setSplitTokens(1).setTokenLimit(bigTokens * 4L));
+            assertFalse(splitRoomy.isTimedOut(), "split token limit, streaming=" + streaming);
+            assertEquals(6_000, splitRoomy.getRecords().size());
+        }
+
+        // the fixtures are well under the default cap
+        for (String file : allFixtures()) {
+            assertEquals(AnalysisTool.analyzeFile(file).getErrors().toString(),
+                    AnalysisTool.analyzeFile(file, new AnalysisConfig().setMaxErrors(Integer.MAX_VALUE))
+                            .getErrors().toString(), file);
+        }
+    }
+
+    @Test
+    void deep_nesting_of_10000_levels_parses_on_the_worker_threads() {
+        // how the time grows with depth is measured by DeepNestingBenchmark
+        int depth = 10_000;
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("parens", "(".repeat(depth) + "1" + ")".repeat(depth));
+        sources.put("calls", "f(".repeat(depth) + "1" + ")".repeat(depth));
+        sources.put("ternary", "c ? a : ".repeat(depth) + "b");
+        sources.put("plus", "a" + " + a".repeat(depth));
+
+        List<AnalysisConfig> configs = List.of(
+                new AnalysisConfig(),
+                new AnalysisConfig().setStreaming(true),
+                new AnalysisConfig().setBackend(ParserBackend.JAVACC));
+
+        for (AnalysisConfig config : configs) {
+            String engine = config.getBackend().getName() + (config.isStreaming() ? " streaming" : "");
+
+            // a worker that overflows its stack hands back a timed out result
+            try (ParallelAnalyzer analyzer = new ParallelAnalyzer(1, false, path -> AnalysisTool.analyzeSource(
+                    CharStreams.fromString(
+                            "class D { void m() { int x = " + sources.get(path) + "; } }"),
+                    "D.java", config))) {
+                for (ParallelAnalyzer.FileResult file : analyzer.analyzeAll(new ArrayList<>(sources.keySet()))) {
+                    String what = file.getPath() + " on " + engine;
+                    assertFalse(file.isFailed(), what);
+                    assertFalse(file.getResult().isTimedOut(), what + ": " + file.getResult().getTimedOut());
+                    assertFalse(file.getResult().hasErrors(), what);
+
+                    List<AnalysisTool.InvocationRecord> records = file.getResult().getRecords();
+                    assertEquals(file.getPath().equals("calls") ? depth : 0, records.size(), what);
+                    if (file.getPath().equals("calls")) {
+                        // the outermost call first, holding every other one
+                        assertEquals(sources.get("calls"), records.get(0).getExpression(), what);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void lazy_records_rebuild_chain_text_without_the_gap_before_each_suffix() throws IOException {
+        String source = "class Chain {\n"
+                + "    void m() {\n"
+                + "        a.b() /* x */ .c()\n"
+                + "            .d(1);\n"
+                + "        new Foo(2).bar();\n"
+                + "    }\n"
+                + "}\n";
+
+        for (boolean streaming : List.of(false, true)) {
+            AnalysisTool.AnalysisResult result = AnalysisTool.analyzeSource(
+                    CharStreams.fromString(source),
+                    "Chain.java",
+                    new AnalysisConfig().setStreaming(streaming));
+
+            List<String> expressions = result.getRecords().stream()
+                    .map(AnalysisTool.InvocationRecord::getExpression)
+                    .toList();
+            assertEquals(List.of(
+                    "a.b()",
+                    "a.b().c()",
+                    "a.b() /* x */ .c().d(1)",
+                    "new Foo(2).bar()",
+                    "new Foo(2)"), expressions, "streaming=" + streaming);
+
+            AnalysisTool.InvocationRecord first = result.getRecords().get(0);
+            assertSame(first.getExpression(), first.getExpression(), "expression text should be built once");
+        }
+    }
+
+    @Test
+    void reporter_writes_the_same_report_as_format_output_when_it_spills() throws IOException {
+        List<AnalysisTool.InvocationRecord> records = new ArrayList<>();
+        for (String file : allFixtures()) {
+            records.addAll(AnalysisTool.analyze(file));
+        }
+
+        // tiny spill threshold, so nearly every record goes through the temp file
+        java.io.StringWriter out = new java.io.StringWriter();
+        try (InvocationReporter reporter = new InvocationReporter(out, 64)) {
+            for (int i = 0; i < records.size(); i += 5) {
+                reporter.addAll(records.subList(i, Math.min(i + 5, records.size())));
+            }
+            assertEquals(records.size(), reporter.getCount());
+        }
+        assertEquals(AnalysisTool.formatOutput(records) + System.lineSeparator(), out.toString());
+
+        java.io.StringWriter empty = new java.io.StringWriter();
+        new InvocationReporter(empty).close();
+        assertEquals(AnalysisTool.formatOutput(List.of()) + System.lineSeparator(), empty.toString());
+    }
+
+    @Test
+    void every_output_format_reads_back_the_records_it_wrote() throws IOException {
+        List<AnalysisTool.InvocationRecord> records = new ArrayList<>();
+        for (String file : allFixtures()) {
+            records.addAll(AnalysisTool.analyze(file));
+        }
+        records.add(new AnalysisTool.InvocationRecord(
+                "say(\"hi\\n\", '\t', \"π\")\n        .twice()", "Odd \"name\".java", 3, 14));
+        records.add(new AnalysisTool.InvocationRecord("ctl(\u0001)", "Odd \"name\".java", 4, 1));
+
+        for (RecordFormat format : RecordFormat.values()) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            try (RecordWriter writer = format.openWriter(out, java.nio.charset.StandardCharsets.UTF_8)) {
+                writer.addAll(records);
+            }
+
+            List<String> read = new ArrayList<>();
+            try (RecordReader reader = format.openReader(
+                    new java.io.ByteArrayInputStream(out.toByteArray()), java.nio.charset.StandardCharsets.UTF_8)) {
+                for (AnalysisTool.InvocationRecord r = reader.next(); r != null; r = reader.next()) {
+                    read.add(r.toString());
+                }
+            }
+            assertEquals(records.stream().map(Object::toString).toList(), read, "round trip through " + format);
+        }
+    }
+
+    @Test
+    void source_discovery_walks_directories_in_order_with_include_and_exclude(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws IOException {
+
+        for (String name : List.of("b/B.java", "a/A.java", "a/deep/Deep.java", "a/notes.txt",
+                "gen/Generated.java", "a/ATest.java", "Top.java")) {
+            java.nio.file.Path file = dir.resolve(name);
+            java.nio.file.Files.createDirectories(file.getParent());
+            java.nio.file.Files.writeString(file, "class X { void m() { n(); } }\n");
+        }
+        java.util.function.Function<List<String>, List<String>> relative = paths -> paths.stream()
+                .map(p -> dir.relativize(java.nio.file.Path.of(p)).toString().replace('\\', '/'))
+                .toList();
+
+        try (SourceDiscovery all = new SourceDiscovery(List.of(dir.toString()), List.of(), List.of())) {
+            List<String> found = new ArrayList<>();
+            all.forEach(found::add);
+            assertEquals(List.of("Top.java", "a/A.java", "a/ATest.java", "a/deep/Deep.java",
+                    "b/B.java", "gen/Generated.java"), relative.apply(found));
+        }
+
+        try (SourceDiscovery filtered = new SourceDiscovery(
+                List.of(dir.toString(), dir.resolve("Missing.java").toString()),
+                List.of("a/**"), List.of("*Test.java", "deep"))) {
+            List<String> found = new ArrayList<>();
+            filtered.forEach(found::add);
+            assertEquals(List.of("a/A.java", "Missing.java"), relative.apply(found));
+        }
+
+        try (SourceDiscovery glob = new SourceDiscovery(
+                List.of(dir.resolve("a") + "/*.java"), List.of(), List.of());
+             ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false)) {
+            List<String> analyzed = new ArrayList<>();
+            analyzer.analyzeAll(glob, r -> analyzed.add(r.getPath()));
+            assertEquals(List.of("a/A.java", "a/ATest.java"), relative.apply(analyzed));
+        }
+    }
+
+    @Test
+    void daemon_returns_the_same_results_as_local_analysis(
+            @org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) throws Exception {
+
+        List<String> files = new ArrayList<>(allFixtures());
+        files.add(dir.resolve("Missing.java").toString());
+
+        List<String> local = new ArrayList<>();
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false)) {
+            analyzer.analyzeAll(files, r -> local.add(describe(r)));
+        }
+
+        java.nio.file.Path socket = dir.resolve("daemon.sock");
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(2, false);
+             AnalysisDaemon daemon = new AnalysisDaemon(socket, analyzer)) {
+            Thread server = Thread.ofVirtual().start(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+
+            // only its owner may connect
+            assertEquals("rw-------", java.nio.file.attribute.PosixFilePermissions.toString(
+                    java.nio.file.Files.getPosixFilePermissions(socket)));
+
+            AnalysisClient client = new AnalysisClient(socket);
+            for (int run = 0; run < 2; run++) {
+                List<String> remote = new ArrayList<>();
+                client.analyze(files, List.of(), List.of(), r -> remote.add(describe(r)));
+                assertEquals(local, remote, "run " + run);
+            }
+
+            client.stop();
+            server.join(10_000);
+            assertFalse(server.isAlive(), "daemon should stop when asked");
+        }
+        assertFalse(java.nio.file.Files.exists(socket), "socket file should be removed");
+
+        // a socket nothing listens on any more is replaced
+        try (java.nio.channels.ServerSocketChannel stale =
+                     java.nio.channels.ServerSocketChannel.open(java.net.StandardProtocolFamily.UNIX)) {
+            stale.bind(java.net.UnixDomainSocketAddress.of(socket));
+        }
+        assertTrue(java.nio.file.Files.exists(socket));
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(1, false)) {
+            new AnalysisDaemon(socket, analyzer).close();
+        }
+        assertFalse(java.nio.file.Files.exists(socket));
+
+        // a mistyped socket path that names a file leaves the file alone
+        java.nio.file.Path source = dir.resolve("Foo.java");
+        java.nio.file.Files.writeString(source, "class Foo { }");
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(1, false)) {
+            assertThrows(IOException.class, () -> new AnalysisDaemon(source, analyzer).close());
+        }
+        assertEquals("class Foo { }", java.nio.file.Files.readString(source));
+        try (java.util.stream.Stream<java.nio.file.Path> left = java.nio.file.Files.list(dir)) {
+            assertEquals(List.of(source), left.toList(), "nothing else should be left in the directory");
+        }
+
+        // the daemon analyzes with its own options, so a client can't pass any
+        assertThrows(IllegalArgumentException.class,
+                () -> AnalysisOptions.parse(new String[] {"--connect", socket.toString(), "--threads", "2", "x"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> AnalysisOptions.parse(new String[] {"--connect", socket.toString(), "--no-cache", "x"}));
+    }
+
+    private static String describe(ParallelAnalyzer.FileResult r) {
+        return r.getPath() + " -> " + (r.isFailed()
+                ? "failed"
+                : r.getResult().getRecords() + " " + r.getResult().getErrors());
+    }
+
+    @Test
+    void split_members_parse_gives_the_same_results_as_parsing_the_whole_file() throws IOException {
+        // every kind of member the brace matching has to get right, across many runs
+        StringBuilder big = new StringBuilder("package p;\nimport java.util.*;\nclass Big implements Runnable {\n");
+        for (int i = 0; i < 150; i++) {
+            big.append("    int[] a").append(i).append(" = { f(1), g(").append(i).append(") };\n")
+                    .append("    Object o").append(i).append(" = new Object() { public String toString() { return h(); } };\n")
+                    .append("    static { System.out.println(").append(i).append("); }\n")
+                    .append("    ;\n")
+                    .append("    class Inner").append(i).append(" { Inner").append(i).append("() { super(); } }\n")
+                    .append("    void m").append(i).append("(int x) { if (x > 0) { m").append(i)
+                    .append("(x - 1); } for (;;) { new Big().run(); } }\n");
+        }
+        big.append("    public void run() { }\n}\ninterface I { int X = f(1); void a(); }\n");
+        String broken = big.toString().replace("m149(x - 1)", "m149(x - 1");
+
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("Big.java", big.toString());
+        sources.put("Broken.java", broken);
+        for (String file : allFixtures()) {
+            sources.put(Paths.get(file).getFileName().toString(), new String(
+                    java.nio.file.Files.readAllBytes(Paths.get(file)), java.nio.charset.StandardCharsets.UTF_8));
+        }
+
+        List<AnalysisConfig> configs = List.of(
+                new AnalysisConfig(),
+                new AnalysisConfig().setStreaming(true),
+                new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.SLL),
+                new AnalysisConfig().setParseMode(AnalysisTool.ParseMode.LL));
+
+        for (AnalysisConfig whole : configs) {
+            AnalysisConfig split = new AnalysisConfig().setParseMode(whole.getParseMode())
+                    .setStreaming(whole.isStreaming()).setSplitTokens(1);
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                AnalysisTool.AnalysisResult expected = AnalysisTool.analyzeSource(
+                        CharStreams.fromString(source.getValue()), source.getKey(), whole);
+                AnalysisTool.AnalysisResult actual = AnalysisTool.analyzeSource(
+                        CharStreams.fromString(source.getValue()), source.getKey(), split);
+
+                String what = source.getKey() + " " + whole.getParseMode() + (whole.isStreaming() ? " streaming" : "");
+                assertEquals(expected.getRecords().toString(), actual.getRecords().toString(), what);
+                assertEquals(expected.getErrors().toString(), actual.getErrors().toString(), what);
+            }
+        }
+    }
+
+    @Test
+    void reused_parsers_give_the_same_results_as_new_ones_and_leave_earlier_results_alone() throws IOException {
+        List<AnalysisConfig> configs = new ArrayList<>();
+        for (AnalysisTool.ParseMode mode : AnalysisTool.ParseMode.values()) {
+            configs.add(new AnalysisConfig().setParseMode(mode));
+            configs.add(new AnalysisConfig().setParseMode(mode).setStreaming(true));
+        }
+        configs.add(new AnalysisConfig().setMaxErrors(1));  // gives up mid-parse on files with errors
+
+        // every file after the first runs on a context the one before it used
+        List<AnalysisTool.AnalysisResult> kept = new ArrayList<>();
+        List<String> keptText = new ArrayList<>();
+        for (AnalysisConfig config : configs) {
+            for (String file : allFixtures()) {
+                AnalysisTool.AnalysisResult reused = AnalysisTool.analyzeFile(file, config);
+                config.setReuseParsers(false);
+                AnalysisTool.AnalysisResult fresh = AnalysisTool.analyzeFile(file, config);
+                config.setReuseParsers(true);
+
+                String what = file + " " + config.getParseMode() + (config.isStreaming() ? " streaming" : "");
+                assertEquals(fresh.getRecords().toString(), reused.getRecords().toString(), what);
+                assertEquals(fresh.getErrors().toString(), reused.getErrors().toString(), what);
+
+                kept.add(reused);
+                keptText.add(reused.getRecords() + " " + reused.getErrors());
+            }
+        }
+
+        for (int i = 0; i < kept.size(); i++) {
+            assertEquals(keptText.get(i), kept.get(i).getRecords() + " " + kept.get(i).getErrors(),
+                    "a later file changed an earlier result");
+        }
+    }
+
+    @Test
+    void stats_time_every_phase_of_every_file_and_report_percentiles_in_order() throws IOException {
+        AnalysisStats stats = new AnalysisStats();
+        AnalysisConfig config = new AnalysisConfig().setStats(stats);
+        List<String> files = allFixtures();
+        long invocations = 0;
+        for (String file : files) {
+            invocations += AnalysisTool.analyzeFile(file, config).getRecords().size();
+        }
+
+        assertEquals(files.size(), stats.getFiles());
+        assertEquals(invocations, stats.getInvocations());
+        assertTrue(stats.getTokens() > 0);
+        for (FileMetrics.Phase phase : List.of(FileMetrics.Phase.READ, FileMetrics.Phase.LEX,
+                FileMetrics.Phase.PARSE, FileMetrics.Phase.WALK)) {
+            LatencyHistogram h = stats.get(phase);
+            assertEquals(files.size(), h.getCount(), phase.label());
+            assertTrue(h.getValueAtPercentile(50) <= h.getValueAtPercentile(99), phase.label());
+            assertTrue(h.getValueAtPercentile(99) <= h.getMax(), phase.label());
+        }
+        assertEquals(0, stats.get(FileMetrics.Phase.OUTPUT).getCount());
+
+        List<FileMetrics> slowest = stats.getSlowest();
+        assertEquals(Math.min(files.size(), AnalysisStats.SLOWEST), slowest.size());
+        for (int i = 1; i < slowest.size(); i++) {
+            assertTrue(slowest.get(i - 1).getElapsedNanos() >= slowest.get(i).getElapsedNanos());
+        }
+
+        // a percentile is the top of its bucket: never below the true value, at most 1/64 above
+        LatencyHistogram h = new LatencyHistogram();
+        Random random = new Random(42);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);  // 1 ns to about 70 s
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = h.getValueAtPercentile(p);
+            assertTrue(reported >= exact && reported <= exact + exact / 64 + 1, p + ": " + reported + " vs " + exact);
+        }
+        assertEquals(values[values.length - 1], h.getMax());
+    }
+
+    // records the walk calls for the given rules, or every call when rules is empty
+    private static class WalkTrace extends JavaParserBaseListener {
+        final List<String> calls = new ArrayList<>();
+        final Set<Integer> rules;
+
+        WalkTrace(Integer... rules) {
+            this.rules = Set.of(rules);
+        }
+
+        private void add(String what, ParserRuleContext ctx) {
+            if (rules.isEmpty() || rules.contains(ctx.getRuleIndex())) {
+                calls.add(what + " " + JavaParser.ruleNames[ctx.getRuleIndex()] + " " + ctx.getSourceInterval());
+            }
+        }
+
+        @Override public void enterEveryRule(ParserRuleContext ctx) { add("enter", ctx); }
+        @Override public void exitEveryRule(ParserRuleContext ctx)  { add("exit", ctx); }
+        @Override public void visitTerminal(TerminalNode node) {
+            if (rules.isEmpty()) calls.add("terminal " + node.getSymbol().getTokenIndex());
+        }
+        @Override public void visitErrorNode(ErrorNode node) {
+            if (rules.isEmpty()) calls.add("error " + node.getSymbol().getTokenIndex());
+        }
+    }
+
+    @Test
+    void composite_analysis_gives_every_analysis_the_calls_its_own_walk_would_in_one_walk() throws IOException {
+        int[] rules = {JavaParser.RULE_fieldAccess, JavaParser.RULE_superFieldAccess,
+                JavaParser.RULE_classLiteralSuffix, JavaParser.RULE_arrayCreationExpression};
+        int imports = 0;
+        for (String file : allFixtures()) {
+            JavaParser parser = new JavaParser(new CommonTokenStream(
+                    AnalysisTool.newLexer(CharStreams.fromPath(Paths.get(file)))));
+            parser.removeErrorListeners();
+            JavaParser.CompilationUnitContext tree = parser.compilationUnit();
+
+            WalkTrace expectedAll = new WalkTrace();
+            ParseTreeWalker.DEFAULT.walk(expectedAll, tree);
+            AnalysisTool.InvocationListener expectedCalls = new AnalysisTool.InvocationListener(file);
+            ParseTreeWalker.DEFAULT.walk(expectedCalls, tree);
+
+            // subscribed one at a time and all at once, so each is checked against a walk of its own
+            List<WalkTrace> subscribed = new ArrayList<>();
+            CompositeAnalysis composite = new CompositeAnalysis();
+            AnalysisTool.InvocationListener calls = new AnalysisTool.InvocationListener(file);
+            composite.add(calls, AnalysisTool.InvocationListener.RULES);
+            for (int rule : rules) {
+                WalkTrace trace = new WalkTrace(rule);
+                subscribed.add(trace);
+                composite.add(trace, rule);
+            }
+            WalkTrace together = new WalkTrace(Arrays.stream(rules).boxed().toArray(Integer[]::new));
+            composite.add(together, rules);
+            WalkTrace importsOnly = new WalkTrace(JavaParser.RULE_importDeclaration);
+            composite.add(importsOnly, JavaParser.RULE_importDeclaration);
+            composite.walk(tree);
+
+            assertEquals(expectedCalls.getRecords().toString(), calls.getRecords().toString(), file);
+            for (int r = 0; r < rules.length; r++) {
+                WalkTrace expected = new WalkTrace(rules[r]);
+                ParseTreeWalker.DEFAULT.walk(expected, tree);
+                assertEquals(expected.calls, subscribed.get(r).calls, file + " " + JavaParser.ruleNames[rules[r]]);
+            }
+            WalkTrace expectedTogether = new WalkTrace(Arrays.stream(rules).boxed().toArray(Integer[]::new));
+            ParseTreeWalker.DEFAULT.walk(expectedTogether, tree);
+            assertEquals(expectedTogether.calls, together.calls, file);
+            assertEquals(2 * tree.importDeclaration().size(), importsOnly.calls.size(), file);
+            imports += tree.importDeclaration().size();
+
+            // an analysis of everything turns pruning off and sees the terminals and error nodes too
+            WalkTrace all = new WalkTrace();
+            new CompositeAnalysis().add(new WalkTrace(JavaParser.RULE_literal), JavaParser.RULE_literal)
+                    .add(all).walk(tree);
+            assertEquals(expectedAll.calls, all.calls, file);
+        }
+        assertTrue(imports > 0, "no fixture has an import");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompositeAnalysis().add(new WalkTrace(), JavaParser.ruleNames.length));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// input files shared by the benchmarks: the Test/ and Tests/ fixtures plus generated sources
+public final class BenchCorpus {
+
+    public static class SourceFile {
+        public final String name;
+        public final String text;
+        public final int lines;
+
+        SourceFile(String name, String text) {
+            this.name = name;
+            this.text = text;
+            this.lines = (int) text.chars().filter(c -> c == '\n').count() + 1;
+        }
+    }
+
+    private BenchCorpus() {
+    }
+
+    public static Path fixtureRoot() {
+        return Paths.get(System.getProperty("user.dir"), "src", "main", "java");
+    }
+
+    public static List<Path> fixturePaths() {
+        Path root = fixtureRoot();
+        try (Stream<Path> test = Files.list(root.resolve("Test"));
+             Stream<Path> tests = Files.list(root.resolve("Tests"))) {
+            return Stream.concat(test, tests)
+                    .filter(p -> p.toString().endsWith(".java"))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<SourceFile> fixtures() {
+        List<SourceFile> files = new ArrayList<>();
+        for (Path p : fixturePaths()) {
+            try {
+                files.add(new SourceFile(p.getFileName().toString(), Files.readString(p)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return files;
+    }
+
+    // a few large generated classes, each roughly `methods` * 6 lines long
+    public static List<SourceFile> synthetic(int files, int methods) {
+        List<SourceFile> result = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            result.add(new SourceFile("Gen" + f + ".java", generate("Gen" + f, methods)));
+        }
+        return result;
+    }
+
+    // `files` tiny classes of a few lines each, like a corpus of small generated sources
+    public static List<SourceFile> tiny(int files) {
+        List<SourceFile> result = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            result.add(new SourceFile("Tiny" + f + ".java",
+                    "class Tiny" + f + " {\n" +
+                    "    void run(Object o) {\n" +
+                    "        o.notify();\n" +
+                    "        new Tiny" + f + "().run(String.valueOf(" + f + "));\n" +
+                    "    }\n" +
+                    "}\n"));
+        }
+        return result;
+    }
+
+    public static List<SourceFile> named(String corpus) {
+        return switch (corpus) {
+            case "fixtures"  -> fixtures();
+            case "synthetic" -> synthetic(4, 2000);
+            case "chains"    -> List.of(new SourceFile("Chains.java", chains(500, 20)));
+            case "tiny"      -> tiny(10_000);
+            default -> throw new IllegalArgumentException("unknown corpus " + corpus);
+        };
+    }
+
+    // `statements` call chains of `length` calls each, e.g. a.m0().m1().m2()...
+    public static String chains(int statements, int length) {
+        StringBuilder sb = new StringBuilder("class Chains {\n    void run(Object a) {\n");
+        for (int i = 0; i < statements; i++) {
+            sb.append("        a");
+            for (int j = 0; j < length; j++) {
+                sb.append(".m").append(j).append("(").append(i).append(")");
+            }
+            sb.append(";\n");
+        }
+        sb.append("    }\n}\n");
+        return sb.toString();
+    }
+
+    // a valid java 1.2 class with call chains, constructors, casts and nested expressions
+    public static String generate(String className, int methods) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package gen;\n\nimport java.util.Vector;\n\n");
+        sb.append("public class ").append(className).append(" extends Object {\n");
+        sb.append("    private Vector items = new Vector();\n");
+        sb.append("    private int total;\n\n");
+
+        for (int i = 0; i < methods; i++) {
+            sb.append("    public int method").append(i).append("(int a, String s) {\n");
+            sb.append("        int x = (a + ").append(i).append(") * (a - 1) / 2;\n");
+            sb.append("        items.addElement(new StringBuffer(s).append(x).toString());\n");
+            sb.append("        if (x > total && s.length() != 0) { total = helper(x, (long) a); }\n");
+            sb.append("        return this.total + ((Integer) items.elementAt(0)).intValue();\n");
+            sb.append("    }\n\n");
+        }
+
+        sb.append("    private int helper(int x, long y) { return (int) (x + y); }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.JavaLexer;
+import ca.ucalgary.cpsc49902.SourceLoader;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * CharStreams.fromPath() against SourceLoader (memory-mapped above 64 KB) on generated
+ * ascii files of 1 KB to 50 MB, for loading alone and for loading plus lexing.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=CharStreamBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CharStreamBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    public int size;
+
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("charstream-bench");
+        file = dir.resolve("Gen.java");
+
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("class Gen {\n");
+        for (int i = 0; sb.length() < size - 2; i++) {
+            sb.append("    int f").append(i).append(" = compute(").append(i)
+                    .append(", \"s").append(i).append("\") + other.value(x * 2);\n");
+        }
+        sb.append("}\n");
+        Files.writeString(file, sb);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    private static int lex(CharStream input) {
+        JavaLexer lexer = new JavaLexer(input);
+        lexer.removeErrorListeners();
+        int count = 0;
+        for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public CharStream loadFromPath() throws IOException {
+        return CharStreams.fromPath(file);
+    }
+
+    @Benchmark
+    public CharStream loadMapped() throws IOException {
+        return SourceLoader.load(file, true);
+    }
+
+    @Benchmark
+    public int lexFromPath() throws IOException {
+        return lex(CharStreams.fromPath(file));
+    }
+
+    @Benchmark
+    public int lexMapped() throws IOException {
+        return lex(SourceLoader.load(file, true));
+    }
+}
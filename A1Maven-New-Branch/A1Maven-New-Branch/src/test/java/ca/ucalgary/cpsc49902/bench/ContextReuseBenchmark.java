@@ -0,0 +1,61 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisConfig;
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * analyzing 10,000 tiny files with a new lexer, token stream, parser and listener for
+ * every file, against resetting the thread's AnalysisContext. one operation is the
+ * whole corpus; the gc profiler the bench profile runs with reports the bytes
+ * allocated per operation (gc.alloc.rate.norm), so per file is that over 10,000.
+ * the sources are loaded once up front, so reading them isn't counted.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=ContextReuseBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ContextReuseBenchmark {
+
+    @Param({"new", "reused"})
+    public String parsers;
+
+    @Param({"tree", "streaming"})
+    public String listener;
+
+    private final List<CharStream> inputs = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private AnalysisConfig config;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (BenchCorpus.SourceFile file : BenchCorpus.named("tiny")) {
+            inputs.add(CharStreams.fromString(file.text));
+            names.add(file.name);
+        }
+        config = new AnalysisConfig()
+                .setReuseParsers(parsers.equals("reused"))
+                .setStreaming(listener.equals("streaming"));
+    }
+
+    @Benchmark
+    public int analyzeAll() {
+        int records = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            CharStream input = inputs.get(i);
+            input.seek(0);
+            records += AnalysisTool.analyzeSource(input, names.get(i), config).getRecords().size();
+        }
+        return records;
+    }
+}
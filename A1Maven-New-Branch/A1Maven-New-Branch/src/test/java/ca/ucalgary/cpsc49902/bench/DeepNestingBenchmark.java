@@ -0,0 +1,67 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisConfig;
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import ca.ucalgary.cpsc49902.ParallelAnalyzer;
+import ca.ucalgary.cpsc49902.ParserBackend;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * one expression nested depth levels deep, analyzed on a ParallelAnalyzer worker (the
+ * calling thread's stack is too small for it). the parse and walk should be linear in
+ * the depth: 8 times the depth should take about 8 times as long, not 64.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=DeepNestingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DeepNestingBenchmark {
+
+    @Param({"parens", "calls", "ternary", "plus"})
+    public String shape;
+
+    @Param({"1250", "10000"})
+    public int depth;
+
+    @Param({"antlr", "antlr-streaming", "javacc"})
+    public String backend;
+
+    private ParallelAnalyzer analyzer;
+    private List<String> paths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String expression = switch (shape) {
+            case "parens" -> "(".repeat(depth) + "1" + ")".repeat(depth);
+            case "calls" -> "f(".repeat(depth) + "1" + ")".repeat(depth);
+            case "ternary" -> "c ? a : ".repeat(depth) + "b";
+            case "plus" -> "a" + " + a".repeat(depth);
+            default -> throw new IllegalArgumentException("No shape " + shape);
+        };
+        String source = "class D { void m() { int x = " + expression + "; } }";
+        AnalysisConfig config = backend.equals("antlr-streaming")
+                ? new AnalysisConfig().setStreaming(true)
+                : new AnalysisConfig().setBackend(ParserBackend.fromOption(backend));
+        analyzer = new ParallelAnalyzer(1, false,
+                path -> AnalysisTool.analyzeSource(CharStreams.fromString(source), path, config));
+        paths = List.of("D.java");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public ParallelAnalyzer.FileResult analyze() {
+        return analyzer.analyzeAll(paths).get(0);
+    }
+}
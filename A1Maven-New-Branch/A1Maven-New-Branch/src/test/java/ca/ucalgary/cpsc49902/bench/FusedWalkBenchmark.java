@@ -0,0 +1,113 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import ca.ucalgary.cpsc49902.CompositeAnalysis;
+import ca.ucalgary.cpsc49902.JavaLexer;
+import ca.ucalgary.cpsc49902.JavaParser;
+import ca.ucalgary.cpsc49902.JavaParserBaseListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * walking pre-built trees with InvocationListener alone (analyses = 1), or with it and
+ * four counters of field accesses, super field accesses, class literals and array
+ * creations (analyses = 5): one IterativeTreeWalker pass per analysis ("separate")
+ * against one CompositeAnalysis walk ("fused"). one operation is the whole corpus.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=FusedWalkBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FusedWalkBenchmark {
+
+    @Param({"fixtures", "synthetic"})
+    public String corpus;
+
+    @Param({"1", "5"})
+    public int analyses;
+
+    @Param({"separate", "fused"})
+    public String walk;
+
+    // counts the contexts of one rule
+    static class RuleCounter extends JavaParserBaseListener {
+        final int rule;
+        int count;
+
+        RuleCounter(int rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            if (ctx.getRuleIndex() == rule) count++;
+        }
+    }
+
+    private static final ParseTreeWalker WALKER = new IterativeTreeWalker();
+
+    private final List<JavaParser.CompilationUnitContext> trees = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final AnalysisTool.InvocationListener invocations = new AnalysisTool.InvocationListener(null);
+    private final List<RuleCounter> counters = new ArrayList<>();
+    private CompositeAnalysis fused;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (BenchCorpus.SourceFile file : BenchCorpus.named(corpus)) {
+            JavaLexer lexer = new JavaLexer(CharStreams.fromString(file.text, file.name));
+            lexer.removeErrorListeners();
+            JavaParser parser = new JavaParser(new CommonTokenStream(lexer));
+            parser.removeErrorListeners();
+            trees.add(parser.compilationUnit());
+            names.add(file.name);
+        }
+
+        fused = new CompositeAnalysis().add(invocations, AnalysisTool.InvocationListener.RULES);
+        if (analyses == 5) {
+            for (int rule : new int[] {JavaParser.RULE_fieldAccess, JavaParser.RULE_superFieldAccess,
+                    JavaParser.RULE_classLiteralSuffix, JavaParser.RULE_arrayCreationExpression}) {
+                RuleCounter counter = new RuleCounter(rule);
+                counters.add(counter);
+                fused.add(counter, rule);
+            }
+        }
+    }
+
+    @Benchmark
+    public int walkAll() {
+        int found = 0;
+        for (int i = 0; i < trees.size(); i++) {
+            invocations.reset(names.get(i), null);
+            for (RuleCounter counter : counters) {
+                counter.count = 0;
+            }
+
+            if (walk.equals("fused")) {
+                fused.walk(trees.get(i));
+            } else {
+                WALKER.walk(invocations, trees.get(i));
+                for (RuleCounter counter : counters) {
+                    WALKER.walk(counter, trees.get(i));
+                }
+            }
+
+            found += invocations.getRecords().size();
+            for (RuleCounter counter : counters) {
+                found += counter.count;
+            }
+        }
+        return found;
+    }
+}
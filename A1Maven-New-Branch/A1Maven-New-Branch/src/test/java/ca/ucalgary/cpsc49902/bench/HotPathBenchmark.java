@@ -0,0 +1,130 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import ca.ucalgary.cpsc49902.JavaLexer;
+import ca.ucalgary.cpsc49902.JavaParser;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * measures each stage of the pipeline on its own, one file per operation:
+ *   lex    - JavaLexer over an already-decoded CharStream
+ *   parse  - JavaParser.compilationUnit() over pre-lexed tokens
+ *   walk   - InvocationListener over a pre-built tree
+ *   format - AnalysisTool.formatOutput() over pre-computed records
+ *
+ * ops/s is files/s and the `lines` counter is lines/s. run with -prof gc (the bench
+ * profile's default) and gc.alloc.rate.norm is the average bytes allocated per file.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=HotPathBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+
+    @Param({"fixtures", "synthetic", "chains"})
+    public String corpus;
+
+    private List<BenchCorpus.SourceFile> files;
+    private List<CharStream> inputs;
+    private List<List<Token>> tokens;
+    private List<JavaParser.CompilationUnitContext> trees;
+    private List<List<AnalysisTool.InvocationRecord>> records;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            lines = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = BenchCorpus.named(corpus);
+        inputs = new ArrayList<>();
+        tokens = new ArrayList<>();
+        trees = new ArrayList<>();
+        records = new ArrayList<>();
+
+        for (BenchCorpus.SourceFile file : files) {
+            CharStream input = CharStreams.fromString(file.text, file.name);
+            inputs.add(input);
+
+            JavaLexer lexer = new JavaLexer(input);
+            lexer.removeErrorListeners();
+            List<Token> fileTokens = new ArrayList<>(lexer.getAllTokens());
+            tokens.add(fileTokens);
+
+            JavaParser.CompilationUnitContext tree = parse(fileTokens);
+            trees.add(tree);
+
+            AnalysisTool.InvocationListener listener = new AnalysisTool.InvocationListener(file.name);
+            ParseTreeWalker.DEFAULT.walk(listener, tree);
+            records.add(listener.getRecords());
+        }
+    }
+
+    private int nextFile(Counters counters) {
+        int i = next;
+        next = (next + 1) % files.size();
+        counters.lines += files.get(i).lines;
+        return i;
+    }
+
+    private static JavaParser.CompilationUnitContext parse(List<Token> fileTokens) {
+        JavaParser parser = new JavaParser(new CommonTokenStream(new ListTokenSource(fileTokens)));
+        parser.removeErrorListeners();
+        return parser.compilationUnit();
+    }
+
+    @Benchmark
+    public int lex(Counters counters) {
+        CharStream input = inputs.get(nextFile(counters));
+        input.seek(0);
+
+        JavaLexer lexer = new JavaLexer(input);
+        lexer.removeErrorListeners();
+
+        int count = 0;
+        for (Token t = lexer.nextToken(); t.getType() != Token.EOF; t = lexer.nextToken()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public JavaParser.CompilationUnitContext parse(Counters counters) {
+        return parse(tokens.get(nextFile(counters)));
+    }
+
+    @Benchmark
+    public List<AnalysisTool.InvocationRecord> walk(Counters counters) {
+        int i = nextFile(counters);
+        AnalysisTool.InvocationListener listener = new AnalysisTool.InvocationListener(files.get(i).name);
+        ParseTreeWalker.DEFAULT.walk(listener, trees.get(i));
+        return listener.getRecords();
+    }
+
+    @Benchmark
+    public String format(Counters counters) {
+        return AnalysisTool.formatOutput(records.get(nextFile(counters)));
+    }
+}
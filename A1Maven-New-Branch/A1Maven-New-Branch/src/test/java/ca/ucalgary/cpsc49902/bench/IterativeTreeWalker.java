@@ -0,0 +1,70 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * ParseTreeWalker with an explicit stack instead of recursion, so walking a deeply
+ * nested tree doesn't need a deep java stack. listeners see exactly the same calls in
+ * the same order as with ParseTreeWalker.DEFAULT.
+ *
+ * antlr's own IterativeParseTreeWalker does the same, but it keeps boxed nodes in a
+ * Deque and goes back through the parent for every sibling, which made the walk
+ * 10-30% slower than the recursive one. this keeps the open rules and the index of
+ * each one's next child in two arrays and reads the children lists directly.
+ *
+ * the analyzer walks with CompositeAnalysis now; this stays as the one-pass-per-listener
+ * baseline FusedWalkBenchmark compares it with.
+ */
+class IterativeTreeWalker extends ParseTreeWalker {
+
+    @Override
+    public void walk(ParseTreeListener listener, ParseTree t) {
+        if (!(t instanceof ParserRuleContext root)) {
+            super.walk(listener, t);  // a single terminal or error node
+            return;
+        }
+
+        ParserRuleContext[] open = new ParserRuleContext[64];
+        int[] next = new int[64];
+        int depth = 0;
+        open[0] = root;
+        enterRule(listener, root);
+
+        while (depth >= 0) {
+            ParserRuleContext ctx = open[depth];
+            List<ParseTree> children = ctx.children;
+            int i = next[depth];
+
+            if (children == null || i == children.size()) {
+                exitRule(listener, ctx);
+                open[depth--] = null;
+                continue;
+            }
+            next[depth] = i + 1;
+
+            ParseTree child = children.get(i);
+            if (child instanceof ErrorNode error) {
+                listener.visitErrorNode(error);
+            } else if (child instanceof TerminalNode terminal) {
+                listener.visitTerminal(terminal);
+            } else {
+                if (++depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                ParserRuleContext rule = (ParserRuleContext) child;
+                open[depth] = rule;
+                next[depth] = 0;
+                enterRule(listener, rule);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import ca.ucalgary.cpsc49902.JavaLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * lexing throughput of the stock JavaLexer against AnalysisTool.newLexer()
+ * (JavaLexerATNSimulator) on about 1 MB of generated source. "ascii" is plain
+ * english identifiers, strings and comments; "unicode" is the same code written
+ * with accented and greek identifiers, strings and comments. one operation lexes
+ * the whole text, so MB/s is ops/s times the size.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=LexerBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LexerBenchmark {
+
+    private static final int SIZE = 1 << 20;
+
+    @Param({"ascii", "unicode"})
+    public String corpus;
+
+    @Param({"stock", "fast"})
+    public String lexer;
+
+    private CharStream input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean unicode = corpus.equals("unicode");
+        StringBuilder sb = new StringBuilder(SIZE + 256).append("class Gen {\n");
+        for (int i = 0; sb.length() < SIZE; i++) {
+            if (unicode) {
+                sb.append("    // überprüfe die größe ").append(i).append('\n')
+                        .append("    int größe").append(i).append(" = berechne(\"grüße ").append(i)
+                        .append("\", π").append(i).append(") + ändern.wert(x * 2);\n");
+            } else {
+                sb.append("    // check the size ").append(i).append('\n')
+                        .append("    int size").append(i).append(" = compute(\"hello ").append(i)
+                        .append("\", pi").append(i).append(") + other.value(x * 2);\n");
+            }
+        }
+        sb.append("}\n");
+        input = CharStreams.fromString(sb.toString());
+    }
+
+    @Benchmark
+    public int lex() {
+        input.seek(0);
+        JavaLexer javaLexer;
+        if (lexer.equals("fast")) {
+            javaLexer = AnalysisTool.newLexer(input);
+        } else {
+            javaLexer = new JavaLexer(input);
+            javaLexer.removeErrorListeners();
+        }
+
+        int count = 0;
+        for (Token t = javaLexer.nextToken(); t.getType() != Token.EOF; t = javaLexer.nextToken()) {
+            count++;
+        }
+        return count;
+    }
+}
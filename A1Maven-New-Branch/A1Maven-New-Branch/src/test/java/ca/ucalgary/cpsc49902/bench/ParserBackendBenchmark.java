@@ -0,0 +1,57 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisConfig;
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import ca.ucalgary.cpsc49902.ParserBackend;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * files analyzed per second with each --backend, on the fixtures, the generated classes
+ * and long call chains. "antlr-streaming" is the antlr backend with --streaming, its
+ * fastest setting. the sources are loaded once, so this is lexing plus parsing plus
+ * extraction.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=ParserBackendBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBackendBenchmark {
+
+    @Param({"antlr", "antlr-streaming", "javacc"})
+    public String backend;
+
+    @Param({"fixtures", "synthetic", "chains"})
+    public String corpus;
+
+    private List<BenchCorpus.SourceFile> files;
+    private List<CharStream> sources;
+    private AnalysisConfig config;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = BenchCorpus.named(corpus);
+        sources = files.stream().<CharStream>map(f -> CharStreams.fromString(f.text, f.name)).toList();
+        config = backend.equals("antlr-streaming")
+                ? new AnalysisConfig().setStreaming(true)
+                : new AnalysisConfig().setBackend(ParserBackend.fromOption(backend));
+    }
+
+    @Benchmark
+    public AnalysisTool.AnalysisResult analyze() {
+        int i = next;
+        next = (next + 1) % files.size();
+        CharStream source = sources.get(i);
+        source.seek(0);
+        return AnalysisTool.analyzeSource(source, files.get(i).name, config);
+    }
+}
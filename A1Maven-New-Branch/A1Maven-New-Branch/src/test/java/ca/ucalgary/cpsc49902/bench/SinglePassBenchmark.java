@@ -0,0 +1,51 @@
+package ca.ucalgary.cpsc49902.bench;
+
+import ca.ucalgary.cpsc49902.AnalysisTool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * the old main loop (getSyntaxErrors() then analyze(), two parses per clean file)
+ * against one analyzeFile() call, over the Test/ and Tests/ fixtures.
+ *
+ *   mvn -Pbench test-compile exec:exec -Djmh.include=SinglePassBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SinglePassBenchmark {
+
+    private List<String> files;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        files = BenchCorpus.fixturePaths().stream().map(Object::toString).toList();
+    }
+
+    private String nextFile() {
+        String file = files.get(next);
+        next = (next + 1) % files.size();
+        return file;
+    }
+
+    @Benchmark
+    public Object twoPass() throws IOException {
+        String file = nextFile();
+        if (AnalysisTool.getSyntaxErrors(file).isEmpty()) {
+            return AnalysisTool.analyze(file);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public AnalysisTool.AnalysisResult singlePass() throws IOException {
+        return AnalysisTool.analyzeFile(nextFile());
+    }
+}